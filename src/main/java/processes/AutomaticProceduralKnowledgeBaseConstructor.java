@@ -15,7 +15,6 @@ import java.net.URISyntaxException;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -26,11 +25,8 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.IntStream;
 
-import org.apache.http.client.fluent.Request;
 import org.xml.sax.SAXException;
 
 import com.google.common.base.CharMatcher;
@@ -51,6 +47,10 @@ import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
 import eval.Evaluator;
 import eval.IntPair;
+import types.DocumentArchive;
+import types.PageFetcher;
+import types.SerpRecord;
+import types.SerpRecord.Result;
 import wrappers.FeatureLineUtil;
 
 public class AutomaticProceduralKnowledgeBaseConstructor {
@@ -81,7 +81,11 @@ public class AutomaticProceduralKnowledgeBaseConstructor {
                     .filter(str -> !str.isEmpty())
                     .forEach(suggest -> id2uuids.put(segs[0], suggest2uuid.get(suggest))));
     // context
+    // written by downloadSearchResult
     File contextDir = new File("data/e2e-context");
+    File contextFile = new File("data/e2e-context.archive");
+    DocumentArchiveMigrator.migrateIfNewer(contextDir, contextFile);
+    DocumentArchive contexts = DocumentArchive.openExisting(contextFile);
     Properties props = new Properties();
     props.setProperty("annotators", "tokenize, ssplit");
     StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
@@ -91,12 +95,10 @@ public class AutomaticProceduralKnowledgeBaseConstructor {
     for (Map.Entry<String, String> entry : id2uuids.entries()) {
       String id = entry.getKey();
       String uuid = entry.getValue();
-      List<File> files = Arrays.stream(contextDir.listFiles()).filter(f -> {
-        String name = f.getName();
-        return name.startsWith(uuid + "-") && name.endsWith(".txt");
-      }).sorted(Comparator.comparing(File::getName)).collect(toList());
-      for (File file : files) {
-        String c = Files.toString(file, Charsets.UTF_8).replaceAll("\\n+", ". ")
+      List<String> names = contexts.getNames(uuid).stream().filter(name -> name.endsWith(".txt"))
+              .collect(toList());
+      for (String name : names) {
+        String c = contexts.getString(uuid, name).replaceAll("\\n+", ". ")
                 .replace("...", ". ").replace(";", ". ").replaceAll("\\.[^\\p{ASCII}]+", ". ")
                 .replaceAll("\\s+", " ").trim();
         if (c.length() == 0 || CharMatcher.ASCII.countIn(c) < c.length() * 0.9
@@ -116,6 +118,7 @@ public class AutomaticProceduralKnowledgeBaseConstructor {
     }
     es.shutdown();
     es.awaitTermination(1, TimeUnit.HOURS);
+    contexts.close();
     System.out.println(iduuid2sentences.size());
     // generate pair files from context
     File corpusFile = File.createTempFile("e2e-apkbc-corpus-", ".tsv");
@@ -216,48 +219,45 @@ public class AutomaticProceduralKnowledgeBaseConstructor {
     for (String line : lines) {
       ids.add(line.split("\t")[0]);
     }
-    Pattern pattern = Pattern.compile("<a href=\"([^>\"]*)\" onmousedown=\"");
+    // the result pages are parsed once into records
+    File recordFile = new File("data/e2e-google-serp.tsv");
+    if (!recordFile.exists()) {
+      SuggestedQueryExtractor.extract(GoogleSuggestedQueryExtractor.E2E_SOURCE);
+    }
+    Map<String, SerpRecord> id2record = SerpRecord.load(recordFile);
     BoilerpipeExtractor extractor = CommonExtractors.ARTICLE_EXTRACTOR;
-    ExecutorService es = Executors.newFixedThreadPool(10);
+    // pages are appended to data/e2e-context.archive, after the files of an older run in data/e2e-context
+    File contextDir = new File("data/e2e-context");
+    File contextFile = new File("data/e2e-context.archive");
+    DocumentArchiveMigrator.migrateIfNewer(contextDir, contextFile);
+    DocumentArchive contexts = DocumentArchive.open(contextFile);
+    PageFetcher fetcher = new PageFetcher();
     System.out.println(ids.size());
     DecimalFormat df = new DecimalFormat("00");
     for (String id : ids) {
-      String googleHtml = Files.toString(new File("data/e2e-googlerp", id + ".html"),
-              Charsets.UTF_8);
-      Matcher matcher = pattern.matcher(googleHtml);
-      int count = 0;
-      while (matcher.find()) {
-        count++;
+      for (Result result : id2record.get(id).getResults()) {
         // check existence
-        File docHtmlFile = new File("data/e2e-context", id + "-" + df.format(count) + ".html");
-        File docTextFile = new File("data/e2e-context", id + "-" + df.format(count) + ".txt");
-        if (docHtmlFile.exists() && docTextFile.exists()) {
+        String rank = df.format(result.getRank());
+        if (contexts.contains(id, rank + ".html") && contexts.contains(id, rank + ".txt")) {
           continue;
         }
         // get url
-        String url = matcher.group(1);
-        if (url.contains("wikihow") || url.contains("google")) {
+        String url = result.getUrl();
+        if (result.isFiltered()) {
           continue;
         }
-        es.execute(() -> {
-          System.out.println(id + " " + url);
-          // download url
-          try {
-            String docHtml = Request.Get(url).connectTimeout(2000).socketTimeout(2000).execute()
-                    .returnContent().asString();
-            Files.write(docHtml, docHtmlFile, Charsets.UTF_8);
-            String docText = extractor.getText(docHtml);
-            Files.write(docText, docTextFile, Charsets.UTF_8);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
+        System.out.println(id + " " + url);
+        // download url, and extract the text on a worker
+        fetcher.fetch(url, docHtml -> {
+          contexts.append(id, rank + ".html", docHtml);
+          String docText = extractor.getText(docHtml);
+          contexts.append(id, rank + ".txt", docText);
         });
       }
     }
-    es.shutdown();
-    if (!es.awaitTermination(5, TimeUnit.SECONDS)) {
-      System.out.println("Timeout occurs for one or some concept retrieval service.");
-    }
+    fetcher.awaitCompletion();
+    fetcher.close();
+    contexts.close();
   }
 
   public static void collectSuggestedQueries() throws IOException {
@@ -5,71 +5,62 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.http.client.fluent.Request;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 
 import de.l3s.boilerpipe.BoilerpipeExtractor;
 import de.l3s.boilerpipe.extractors.CommonExtractors;
+import types.DocumentArchive;
+import types.PageFetcher;
+import types.SerpRecord;
+import types.SerpRecord.Result;
 
 public class ContextExtractor {
 
-  public static Pattern pattern = Pattern.compile("<a href=\"([^>\"]*)\" onmousedown=\"");
-
   public static void main(String[] args) throws InterruptedException, IOException {
     List<String> lines = Files.readLines(new File("data/query.tsv"), Charsets.UTF_8);
     Set<String> ids = new HashSet<>();
     for (String line : lines) {
       ids.add(line.split("\t")[0]);
     }
+    // the result pages are parsed once by GoogleSuggestedQueryExtractor
+    Map<String, SerpRecord> id2record = SerpRecord.load(new File("data/google-serp.tsv"));
     BoilerpipeExtractor extractor = CommonExtractors.ARTICLE_EXTRACTOR;
-    ExecutorService es = Executors.newFixedThreadPool(10);
+    // pages are appended to data/context.archive, after the files of an older run in data/context
+    File contextDir = new File("data/context");
+    File contextFile = new File("data/context.archive");
+    DocumentArchiveMigrator.migrateIfNewer(contextDir, contextFile);
+    DocumentArchive contexts = DocumentArchive.open(contextFile);
+    PageFetcher fetcher = new PageFetcher();
     System.out.println(ids.size());
     DecimalFormat df = new DecimalFormat("00");
     for (String id : ids) {
-      String googleHtml = Files.toString(new File("data/googlerp", id + ".html"), Charsets.UTF_8);
-      Matcher matcher = pattern.matcher(googleHtml);
-      int count = 0;
-      while (matcher.find()) {
-        count++;
+      for (Result result : id2record.get(id).getResults()) {
         // check existence
-        File docHtmlFile = new File("data/context", id + "-" + df.format(count) + ".html");
-        File docTextFile = new File("data/context", id + "-" + df.format(count) + ".txt");
-        if (docHtmlFile.exists() && docTextFile.exists()) {
+        String rank = df.format(result.getRank());
+        if (contexts.contains(id, rank + ".html") && contexts.contains(id, rank + ".txt")) {
           continue;
         }
         // get url
-        String url = matcher.group(1);
-        if (url.contains("wikihow") || url.contains("google")) {
+        String url = result.getUrl();
+        if (result.isFiltered()) {
           continue;
         }
-        es.execute(() -> {
-          System.out.println(id + " " + url);
-          // download url
-          try {
-            String docHtml = Request.Get(url).connectTimeout(2000).socketTimeout(2000).execute()
-                    .returnContent().asString();
-            Files.write(docHtml, docHtmlFile, Charsets.UTF_8);
-            String docText = extractor.getText(docHtml);
-            Files.write(docText, docTextFile, Charsets.UTF_8);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
+        System.out.println(id + " " + url);
+        // download url, and extract the text on a worker
+        fetcher.fetch(url, docHtml -> {
+          contexts.append(id, rank + ".html", docHtml);
+          String docText = extractor.getText(docHtml);
+          contexts.append(id, rank + ".txt", docText);
         });
       }
     }
-    es.shutdown();
-    if (!es.awaitTermination(5, TimeUnit.MINUTES)) {
-      System.out.println("Timeout occurs for one or some concept retrieval service.");
-    }
+    fetcher.awaitCompletion();
+    fetcher.close();
+    contexts.close();
   }
 
 }
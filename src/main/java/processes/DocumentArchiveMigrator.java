@@ -0,0 +1,92 @@
+package processes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import types.DocumentArchive;
+
+// packs the files of a page directory into a document archive, e.g. data/context into
+// data/context.archive; a file "<id>-<rank>.<ext>" is stored under its id with the name
+// "<rank>.<ext>", any other file "<id>.<ext>" under its id with the name "<ext>". Documents already
+// in the archive are skipped unless the file is newer than the archive, e.g. downloaded again, so
+// an interrupted migration can be run again.
+public class DocumentArchiveMigrator {
+
+  // ranks are written with two digits, or three past 99, so the last segment of a uuid is not a
+  // rank
+  private static final Pattern RANKED_NAME = Pattern.compile("(.+)-(\\d{2,3}\\.\\w+)");
+
+  private static final Pattern NAME = Pattern.compile("(.+)\\.(\\w+)");
+
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 2) {
+      migrate(new File(args[0]), new File(args[1]));
+      return;
+    }
+    for (String dir : new String[] { "data/googlerp", "data/bingrp", "data/e2e-googlerp",
+        "data/context", "data/e2e-context" }) {
+      if (new File(dir).isDirectory()) {
+        migrate(new File(dir), new File(dir + ".archive"));
+      }
+    }
+  }
+
+  public static void migrate(File dir, File archiveFile) throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir.toPath())) {
+      stream.forEach(files::add);
+    }
+    long archived = archiveFile.lastModified();
+    int count = 0;
+    try (DocumentArchive archive = DocumentArchive.open(archiveFile)) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        Matcher matcher = RANKED_NAME.matcher(fileName);
+        if (!matcher.matches()) {
+          matcher = NAME.matcher(fileName);
+          if (!matcher.matches()) {
+            System.out.println("Skipping " + file);
+            continue;
+          }
+        }
+        String id = matcher.group(1);
+        String name = matcher.group(2);
+        if (!archive.contains(id, name) || file.toFile().lastModified() > archived) {
+          archive.append(id, name, java.nio.file.Files.readAllBytes(file));
+          count++;
+        }
+      }
+      System.out.println(dir + ": " + count + " files added, " + archive.getDocumentCount()
+              + " documents in " + archiveFile);
+    }
+    archiveFile.setLastModified(System.currentTimeMillis());
+  }
+
+  // migrates a page directory if a file in it was written after its archive, or if there is no
+  // archive yet, so that the files of an older run are not missed by the archive readers
+  public static void migrateIfNewer(File dir, File archiveFile) throws IOException {
+    if (!dir.isDirectory()) {
+      return;
+    }
+    long archived = archiveFile.exists() ? archiveFile.lastModified() : Long.MIN_VALUE;
+    boolean newer = false;
+    try (DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir.toPath())) {
+      for (Path file : stream) {
+        if (file.toFile().lastModified() > archived) {
+          newer = true;
+          break;
+        }
+      }
+    }
+    if (newer) {
+      migrate(dir, archiveFile);
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+package processes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import types.Task;
+import types.TaskExtractor;
+import types.WikidumpArticle;
+import types.WikidumpPageFilter;
+import types.WikidumpXmlAnalyzer;
+import types.WikitextNormalizer;
+
+// checks that the single-pass normalizer reproduces the pattern cascade on every intro and step
+// line of a dump, and times both
+public class ExplanationNormalizerBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException {
+    String dumpFilepath = args.length > 0 ? args[0] : "../wikihowcom-20141208-current.xml";
+    List<String> lines = new ArrayList<>();
+    try (Stream<WikidumpArticle> articles = WikidumpXmlAnalyzer
+            .parallelStreamArticles(dumpFilepath, new WikidumpPageFilter())) {
+      articles.map(TaskExtractor::createTask).filter(Objects::nonNull).forEachOrdered(task -> {
+        lines.add(task.getExplanation());
+        task.getSubtasks().stream().map(Task::getExplanation).forEachOrdered(lines::add);
+      });
+    }
+    System.out.println("Collected " + lines.size() + " lines");
+    int mismatches = 0;
+    int fallbacks = 0;
+    for (String line : lines) {
+      String expected = TaskExtractor.normalizeExplanationByPatterns(line);
+      String actual = WikitextNormalizer.tryNormalize(line);
+      if (actual == null) {
+        fallbacks++;
+        actual = WikitextNormalizer.normalize(line);
+      }
+      if (!expected.equals(actual)) {
+        if (mismatches < 20) {
+          System.out.println("Mismatch on: " + line + "\n  patterns: " + expected
+                  + "\n  single-pass: " + actual);
+        }
+        mismatches++;
+      }
+    }
+    System.out.println("Found " + mismatches + " mismatches, " + fallbacks
+            + " lines fell back to the patterns");
+    long patternsTime = time(lines, TaskExtractor::normalizeExplanationByPatterns);
+    long singlePassTime = time(lines, WikitextNormalizer::normalize);
+    System.out.println("Patterns: " + patternsTime / lines.size() + " ns per line");
+    System.out.println("Single-pass: " + singlePassTime / lines.size() + " ns per line");
+    System.out.println("Speedup: " + String.format("%.2f", (double) patternsTime / singlePassTime));
+  }
+
+  // best of several rounds after one warm-up round
+  private static long time(List<String> lines, UnaryOperator<String> normalizer) {
+    long best = Long.MAX_VALUE;
+    long length = 0;
+    for (int round = 0; round <= ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (String line : lines) {
+        length += normalizer.apply(line).length();
+      }
+      long elapsed = System.nanoTime() - start;
+      if (round > 0) {
+        best = Math.min(best, elapsed);
+      }
+    }
+    // keeps the results alive
+    if (length < 0) {
+      System.out.println(length);
+    }
+    return Math.max(best, 1);
+  }
+
+}
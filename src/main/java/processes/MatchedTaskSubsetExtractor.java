@@ -0,0 +1,47 @@
+package processes;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import types.WikidumpFiles;
+import types.WikidumpSubsetExtractor;
+
+public class MatchedTaskSubsetExtractor {
+
+  public static void main(String[] args) throws IOException {
+    // args: the dump, then the tsv files whose first column is a task id
+    String dumpPath = args.length > 0 ? args[0] : "../wikihowcom-20141208-current.xml";
+    List<String> idPaths = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+            : Arrays.asList("data/query.tsv");
+    Set<Integer> ids = new HashSet<>();
+    for (String idPath : idPaths) {
+      for (String line : Files.readLines(new File(idPath), Charsets.UTF_8)) {
+        String id = line.split("\t", 2)[0].trim();
+        if (!id.isEmpty()) {
+          ids.add(Integer.parseInt(id));
+        }
+      }
+    }
+    System.out.println("Read " + ids.size() + " task ids");
+    try (InputStream is = WikidumpFiles.open(dumpPath);
+            OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream("data/wikihow-matched-task.xml"), 1024 * 1024)) {
+      WikidumpSubsetExtractor extractor = new WikidumpSubsetExtractor(is, os, ids);
+      extractor.extract();
+      System.out.println("Copied " + extractor.getCopiedCount() + " of " + extractor.getCount()
+              + " pages");
+    }
+  }
+
+}
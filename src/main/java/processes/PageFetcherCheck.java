@@ -0,0 +1,112 @@
+package processes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import types.PageFetcher;
+
+// checks PageFetcher against a local stub server: pages, server errors, handler errors, timeouts,
+// refused connections and malformed urls are all fetched at once, and awaitCompletion has to return
+// with every page handled and every failure released
+public class PageFetcherCheck {
+
+  private static final int PAGES = 200;
+
+  private static final int FAILURES = 10;
+
+  private static final int TIMEOUT = 500;
+
+  public static void main(String[] args) throws Exception {
+    ExecutorService serverThreads = Executors.newCachedThreadPool();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/page", exchange -> respond(exchange.getResponseBody(),
+            exchange.getRequestURI().toString(), () -> exchange.sendResponseHeaders(200, 0)));
+    server.createContext("/error", exchange -> {
+      exchange.sendResponseHeaders(500, -1);
+      exchange.close();
+    });
+    // answers after the socket timeout of the fetcher
+    server.createContext("/slow", exchange -> {
+      try {
+        Thread.sleep(4 * TIMEOUT);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(exchange.getResponseBody(), "slow", () -> exchange.sendResponseHeaders(200, 0));
+    });
+    server.setExecutor(serverThreads);
+    server.start();
+    String host = "http://127.0.0.1:" + server.getAddress().getPort();
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    AtomicInteger handled = new AtomicInteger();
+    ExecutorService waiter = Executors.newSingleThreadExecutor();
+    try (PageFetcher fetcher = new PageFetcher(20, 4, TIMEOUT, 16)) {
+      long start = System.nanoTime();
+      for (int i = 0; i < PAGES; i++) {
+        String expected = "/page/" + i;
+        fetcher.fetch(host + expected, html -> {
+          if (!html.equals(expected)) {
+            throw new IllegalStateException("Got " + html + " for " + expected);
+          }
+          handled.incrementAndGet();
+        });
+      }
+      for (int i = 0; i < FAILURES; i++) {
+        fetcher.fetch(host + "/error/" + i, html -> handled.incrementAndGet());
+        fetcher.fetch(host + "/slow/" + i, html -> handled.incrementAndGet());
+        fetcher.fetch("http://127.0.0.1:" + closedPort + "/" + i, html -> handled.incrementAndGet());
+        fetcher.fetch(host + "/page/throw/" + i, html -> {
+          throw new IOException("handler failure");
+        });
+        fetcher.fetch("not a url " + i, html -> handled.incrementAndGet());
+      }
+      Future<?> completion = waiter.submit(() -> {
+        fetcher.awaitCompletion();
+        return null;
+      });
+      try {
+        completion.get(20 * TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new IllegalStateException("awaitCompletion did not return", e);
+      }
+      System.out.println("awaitCompletion returned after "
+              + (System.nanoTime() - start) / 1000000 + " ms");
+    } finally {
+      waiter.shutdownNow();
+      server.stop(0);
+      serverThreads.shutdownNow();
+    }
+    System.out.println("Handled " + handled.get() + " of " + PAGES + " pages");
+    if (handled.get() != PAGES) {
+      throw new IllegalStateException("Expected " + PAGES + " handled pages");
+    }
+  }
+
+  private interface Headers {
+
+    void send() throws IOException;
+
+  }
+
+  // the body is the request path, so a handler can tell that it got its own page
+  private static void respond(OutputStream os, String body, Headers headers) throws IOException {
+    headers.send();
+    os.write(body.getBytes(StandardCharsets.UTF_8));
+    os.close();
+  }
+
+}
@@ -0,0 +1,21 @@
+package processes;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import types.QueryLogIndex;
+
+public class QueryLogIndexer {
+
+  public static void main(String[] args) throws IOException {
+    List<String> logPaths = args.length > 0 ? Arrays.asList(args)
+            : QueryLogMatcher.DEFAULT_LOG_PATHS;
+    QueryLogIndex.build(logPaths, QueryLogMatcher.RECORDS_PATH, QueryLogMatcher.INDEX_PATH);
+    try (QueryLogIndex index = QueryLogIndex.open(QueryLogMatcher.RECORDS_PATH,
+            QueryLogMatcher.INDEX_PATH)) {
+      System.out.println("Indexed " + index.getPostingCount() + " queries");
+    }
+  }
+
+}
@@ -1,69 +1,335 @@
 package processes;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.time.LocalDateTime;
+import java.io.InputStream;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.zip.GZIPInputStream;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.io.Files;
 
+import types.FuzzyKeyIndex;
+import types.QueryCooccurrence;
+import types.QueryCooccurrence.PairCollector;
+import types.QueryLogIndex;
+import types.QueryLogIndex.Posting;
+import types.QueryLogParser;
+import types.QueryLogSessionizer;
+import types.QueryLogSessionizer.Boundary;
+import types.QueryLogSessionizer.SessionListener;
+
 public class QueryLogMatcher {
 
-  public static DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd kk:mm:ss");
+  public static DateTimeFormatter dtf = QueryLogParser.TIME_FORMAT;
+
+  // bytes per shard; a shard is only cut where the user id changes, and since the log is sorted by
+  // user id, no session crosses a shard
+  private static final int SHARD_SIZE = 8 * 1024 * 1024;
+
+  private static final int SESSION_TIMEOUT = 30 * 60;
+
+  // --fuzzy-distance 1 or 2 also matches queries within that edit distance of a task summary (one
+  // edit per four characters at most), e.g. typos and plurals; the log index only serves exact
+  // matches, so the logs are scanned instead
+  public static final int DEFAULT_FUZZY_DISTANCE = 0;
+
+  // --cooccurrence-top-k above 0 also counts the top follow-up queries of each task in a count-min
+  // sketch whose estimates exceed the true counts by at most epsilon times the number of pairs,
+  // with probability 1 - delta, and writes them to data/log-cooccurring-query.tsv
+  public static final int DEFAULT_COOCCURRENCE_TOP_K = 0;
+
+  public static final double DEFAULT_COOCCURRENCE_EPSILON = 1e-5;
+
+  public static final double DEFAULT_COOCCURRENCE_DELTA = 1e-3;
 
-  public static void main(String[] args) throws IOException {
+  // built by QueryLogIndexer
+  public static final String RECORDS_PATH = "data/query-log.records";
+
+  public static final String INDEX_PATH = "data/query-log.index";
+
+  // e.g. all ten user-ct-test-collection-XX.txt.gz files of the AOL collection can be given instead
+  public static final List<String> DEFAULT_LOG_PATHS = Arrays
+          .asList("../user-ct-test-collection.txt.gz");
+
+  // the options come first, then the log files, e.g. --fuzzy-distance 1 a.txt.gz b.txt.gz
+  public static void main(String[] args)
+          throws IOException, InterruptedException, ExecutionException {
+    int fuzzyDistance = DEFAULT_FUZZY_DISTANCE;
+    int cooccurrenceTopK = DEFAULT_COOCCURRENCE_TOP_K;
+    double cooccurrenceEpsilon = DEFAULT_COOCCURRENCE_EPSILON;
+    double cooccurrenceDelta = DEFAULT_COOCCURRENCE_DELTA;
+    int argIndex = 0;
+    for (; argIndex < args.length && args[argIndex].startsWith("--"); argIndex += 2) {
+      if (argIndex + 1 == args.length) {
+        throw new IllegalArgumentException("Missing value of " + args[argIndex]);
+      }
+      String value = args[argIndex + 1];
+      switch (args[argIndex]) {
+        case "--fuzzy-distance":
+          fuzzyDistance = Integer.parseInt(value);
+          break;
+        case "--cooccurrence-top-k":
+          cooccurrenceTopK = Integer.parseInt(value);
+          break;
+        case "--cooccurrence-epsilon":
+          cooccurrenceEpsilon = Double.parseDouble(value);
+          break;
+        case "--cooccurrence-delta":
+          cooccurrenceDelta = Double.parseDouble(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[argIndex]);
+      }
+    }
+    List<String> logPaths = Arrays.asList(args).subList(argIndex, args.length);
     Map<String, String> string2id = Maps.newHashMap();
     List<String> lines = Files.readLines(new File("data/wikihow-id-summary.tsv"), Charsets.UTF_8);
     for (String line : lines) {
       String[] segs = line.split("\t");
       string2id.put(toAlphabeticString(segs[1]), segs[0]);
     }
-    BufferedReader br = new BufferedReader(new InputStreamReader(
-            new GZIPInputStream(new FileInputStream("../user-ct-test-collection.txt.gz")),
-            Charsets.UTF_8));
-    String line;
-    LocalDateTime taskTimeout = LocalDateTime.MIN;
-    String userId = null;
-    SetMultimap<String, String> task2subs = HashMultimap.create();
-    String task = null;
-    boolean flag = false;
-    while ((line = br.readLine()) != null) {
-      String[] segs = line.split("\t", 4);
-      String query = segs[1].toLowerCase();
-      if (!query.contains(" ")) {
-        continue;
-      }
-      String string = toAlphabeticString(query);
-      if (string2id.containsKey(string)) {
-        task = string2id.get(string) + "\t" + segs[1];
-        taskTimeout = LocalDateTime.parse(segs[2], dtf).plusMinutes(30);
-        userId = segs[0];
-        flag = true;
-        System.out.println(string2id.get(string));
-      } else if (flag && userId.equals(segs[0])
-              && LocalDateTime.parse(segs[2], dtf).isBefore(taskTimeout)) {
-        task2subs.put(task, segs[1]);
-      } else {
-        flag = false;
+    QueryCooccurrence cooccurrence = cooccurrenceTopK > 0 ? new QueryCooccurrence(
+            cooccurrenceEpsilon, cooccurrenceDelta, cooccurrenceTopK) : null;
+    SetMultimap<String, String> task2subs;
+    if (logPaths.isEmpty() && fuzzyDistance == 0 && new File(INDEX_PATH).exists()) {
+      task2subs = matchIndex(string2id, cooccurrence);
+    } else {
+      if (logPaths.isEmpty() && fuzzyDistance > 0 && new File(INDEX_PATH).exists()) {
+        System.out.println("Scanning the logs, " + INDEX_PATH + " only serves exact matches");
       }
+      task2subs = matchLogs(logPaths.isEmpty() ? DEFAULT_LOG_PATHS : logPaths, string2id,
+              fuzzyDistance, cooccurrence);
     }
-    br.close();
+    System.out.println("Matched " + task2subs.keySet().size() + " task queries");
     BufferedWriter bw = Files.newWriter(new File("data/log-matched-query.tsv"), Charsets.UTF_8);
     for (String t : task2subs.keySet()) {
       bw.write(t + "\t" + String.join("\t", task2subs.get(t)) + "\n");
     }
     bw.close();
+    if (cooccurrence != null) {
+      System.out.println("Counted " + cooccurrence.getTotal() + " co-occurrences");
+      bw = Files.newWriter(new File("data/log-cooccurring-query.tsv"), Charsets.UTF_8);
+      for (String taskId : new TreeSet<>(cooccurrence.getTaskIds())) {
+        for (String query : cooccurrence.getTopQueries(taskId)) {
+          bw.write(taskId + "\t" + query + "\t" + cooccurrence.estimate(taskId, query) + "\n");
+        }
+      }
+      bw.close();
+    }
+  }
+
+  private static SetMultimap<String, String> matchLogs(List<String> logPaths,
+          Map<String, String> string2id, int fuzzyDistance, QueryCooccurrence cooccurrence)
+                  throws InterruptedException, ExecutionException {
+    int nThreads = Runtime.getRuntime().availableProcessors();
+    ExecutorService matchers = Executors.newFixedThreadPool(nThreads);
+    ExecutorService readers = Executors.newFixedThreadPool(Math.min(logPaths.size(), nThreads));
+    // stopped even if a log fails, the pools would otherwise keep the jvm alive
+    try {
+      FuzzyKeyIndex fuzzyIndex = fuzzyDistance > 0
+              ? new FuzzyKeyIndex(string2id, fuzzyDistance) : null;
+      // one parser per thread, the key buffer of a parser is reused across lines
+      ThreadLocal<QueryLogParser> parsers = ThreadLocal
+              .withInitial(() -> new QueryLogParser(string2id, fuzzyIndex));
+      // bounds the shards that are read but not matched yet
+      Semaphore pending = new Semaphore(2 * nThreads);
+      List<Future<List<Future<SetMultimap<String, String>>>>> logs = new ArrayList<>();
+      for (String logPath : logPaths) {
+        logs.add(readers.submit(() -> readShards(logPath, parsers, cooccurrence, matchers,
+                pending)));
+      }
+      // merged in file and shard order, so the output is the same as a sequential scan
+      SetMultimap<String, String> task2subs = LinkedHashMultimap.create();
+      for (int i = 0; i < logs.size(); i++) {
+        List<Future<SetMultimap<String, String>>> shards = logs.get(i).get();
+        for (Future<SetMultimap<String, String>> shard : shards) {
+          task2subs.putAll(shard.get());
+        }
+        System.out.println(logPaths.get(i) + ": " + shards.size() + " shards");
+      }
+      return task2subs;
+    } finally {
+      readers.shutdownNow();
+      matchers.shutdownNow();
+    }
+  }
+
+  // looks the task summaries up in the index, and reads the session of each matched query from the
+  // records, in log order, so the output is the same as scanning the indexed logs; the index is
+  // built again first if the logs have changed since
+  private static SetMultimap<String, String> matchIndex(Map<String, String> string2id,
+          QueryCooccurrence cooccurrence) throws IOException {
+    PairCollector pairs = cooccurrence != null ? new PairCollector(cooccurrence) : null;
+    SetMultimap<String, String> task2subs = LinkedHashMultimap.create();
+    try (QueryLogIndex index = QueryLogIndex.openOrRebuild(RECORDS_PATH, INDEX_PATH,
+            DEFAULT_LOG_PATHS)) {
+      List<Posting> postings = new ArrayList<>();
+      for (String key : string2id.keySet()) {
+        postings.addAll(index.find(key));
+      }
+      postings.sort(Comparator.comparingLong(Posting::getOffset));
+      System.out.println(INDEX_PATH + ": " + postings.size() + " task queries");
+      QueryLogSessionizer sessionizer = new QueryLogSessionizer(new QueryLogParser(string2id),
+              SESSION_TIMEOUT, Boundary.TASK_QUERY);
+      for (Posting posting : postings) {
+        byte[] session = index.readSession(posting, posting.getTime() + SESSION_TIMEOUT);
+        // only the session of the posting, a later task query in the window has its own posting
+        sessionizer.sessionize(session, 0, session.length, new SessionListener() {
+
+          private String task;
+
+          private boolean ended;
+
+          @Override
+          public void startSession(String userId, String taskId, String query, long time) {
+            if (task == null) {
+              task = taskId + "\t" + query;
+              if (pairs != null) {
+                pairs.startSession(userId, taskId, query, time);
+              }
+            }
+          }
+
+          @Override
+          public void addQuery(String query, long time) {
+            if (!ended) {
+              task2subs.put(task, query);
+              if (pairs != null) {
+                pairs.addQuery(query, time);
+              }
+            }
+          }
+
+          @Override
+          public void endSession() {
+            ended = true;
+          }
+
+        });
+      }
+    }
+    return task2subs;
+  }
+
+  private static List<Future<SetMultimap<String, String>>> readShards(String logPath,
+          ThreadLocal<QueryLogParser> parsers, QueryCooccurrence cooccurrence, ExecutorService es,
+          Semaphore pending) throws IOException, InterruptedException {
+    List<Future<SetMultimap<String, String>>> shards = new ArrayList<>();
+    try (InputStream is = new GZIPInputStream(new FileInputStream(logPath), 1024 * 1024)) {
+      byte[] buffer = new byte[SHARD_SIZE];
+      int end = 0;
+      boolean eof = false;
+      while (!eof) {
+        int n = is.read(buffer, end, buffer.length - end);
+        if (n < 0) {
+          eof = true;
+        } else {
+          end += n;
+        }
+        if (!eof && end < buffer.length) {
+          continue;
+        }
+        int cut = eof ? end : lastUserStart(buffer, end);
+        if (cut < 0) {
+          // a single user fills the buffer
+          buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+          continue;
+        }
+        if (cut > 0) {
+          shards.add(submit(buffer, cut, parsers, cooccurrence, es, pending));
+        }
+        byte[] next = new byte[Math.max(SHARD_SIZE, 2 * (end - cut))];
+        System.arraycopy(buffer, cut, next, 0, end - cut);
+        buffer = next;
+        end -= cut;
+      }
+    }
+    return shards;
+  }
+
+  // the start of the first complete line of the last user id whose lines all begin before end,
+  // or -1
+  private static int lastUserStart(byte[] buffer, int end) {
+    int lineEnd = end;
+    while (lineEnd > 0 && buffer[lineEnd - 1] != '\n') {
+      lineEnd--;
+    }
+    // lineEnd is after the last newline, lines before it are complete
+    int start = lineStart(buffer, lineEnd - 1);
+    while (start > 0) {
+      int previousStart = lineStart(buffer, start - 1);
+      if (!QueryLogSessionizer.sameUser(buffer, previousStart, start)) {
+        return start;
+      }
+      start = previousStart;
+    }
+    return -1;
+  }
+
+  private static int lineStart(byte[] buffer, int newline) {
+    int start = newline;
+    while (start > 0 && buffer[start - 1] != '\n') {
+      start--;
+    }
+    return start;
+  }
+
+  private static Future<SetMultimap<String, String>> submit(byte[] shard, int length,
+          ThreadLocal<QueryLogParser> parsers, QueryCooccurrence cooccurrence, ExecutorService es,
+          Semaphore pending) throws InterruptedException {
+    pending.acquire();
+    return es.submit(() -> {
+      try {
+        return match(shard, length, parsers.get(), cooccurrence);
+      } finally {
+        pending.release();
+      }
+    });
+  }
+
+  // the queries issued by the same user within 30 minutes after a query that matches a task
+  // summary; their (task id, query) pairs are counted as the shard is matched, if needed
+  private static SetMultimap<String, String> match(byte[] bytes, int length,
+          QueryLogParser parser, QueryCooccurrence cooccurrence) {
+    SetMultimap<String, String> task2subs = LinkedHashMultimap.create();
+    SessionListener listener = new SessionListener() {
+
+      private String task;
+
+      @Override
+      public void startSession(String userId, String taskId, String query, long time) {
+        task = taskId + "\t" + query;
+      }
+
+      @Override
+      public void addQuery(String query, long time) {
+        task2subs.put(task, query);
+      }
+
+    };
+    if (cooccurrence != null) {
+      listener = SessionListener.of(listener, new PairCollector(cooccurrence));
+    }
+    new QueryLogSessionizer(parser, SESSION_TIMEOUT, Boundary.TASK_QUERY).sessionize(bytes, 0,
+            length, listener);
+    return task2subs;
   }
 
   public static String toAlphabeticString(String string) {
@@ -3,9 +3,12 @@ package processes;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
@@ -13,16 +16,17 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.io.Files;
-import com.vseravno.solna.SolnaException;
 
-import types.Task;
-import types.TaskExtractor;
-import types.WikidumpArticle;
-import types.WikidumpXmlAnalyzer;
+import types.SubstringMatcher;
+import types.TaskNode;
+import types.TaskSnapshot;
 
 public class QueryTaskBicorpusConstructor {
 
-  public static void main(String[] args) throws SolnaException, IOException {
+  // matches the tasks on the common fork join pool, the output is the same as a serial run
+  private static final boolean PARALLEL = true;
+
+  public static void main(String[] args) throws IOException {
     SetMultimap<String, String> id2related = HashMultimap.create();
     Map<String, String> id2query = Maps.newHashMap();
     Map<String, String> id2logquery = Maps.newHashMap();
@@ -54,45 +58,65 @@ public class QueryTaskBicorpusConstructor {
               id2related.putAll(id, related);
               id2query.put(id, query);
             });
-    WikidumpXmlAnalyzer analyzer = new WikidumpXmlAnalyzer("data/wikihow-matched-task.xml", null);
-    List<WikidumpArticle> articles = analyzer.getArticles();
-    TaskExtractor extractor = new TaskExtractor();
-    extractor.addWikidumpArticles(articles);
-    extractor.normalizeTasks();
-    extractor.buildHierarchy();
-    extractor.fillTaskIds();
-    List<Task> tasks = extractor.getTasks();
+    // only tasks that have a query can produce corpus lines
+    TaskSnapshot snapshot = TaskSnapshot.loadOrBuild("data/wikihow-matched-task.xml",
+            "data/wikihow-matched-task.snapshot");
+    long deleted = id2query.keySet().stream().filter(id -> snapshot.isDeleted(Integer.parseInt(id)))
+            .count();
+    if (deleted > 0) {
+      System.out.println("Skipping the queries of " + deleted + " deleted tasks");
+    }
+    List<TaskNode> tasks = snapshot.getTasks(id2query.keySet());
     BufferedWriter bw = Files.newWriter(new File("data/classify-sts-corpus.tsv"), Charsets.UTF_8);
-    for (Task task : tasks) {
-      String id = task.getId();
-      if (id2logquery.containsKey(id)) {
-        String summary = task.getSummary();
-        String explanation = task.getExplanation();
-        String query = id2logquery.get(id);
-        if (toAlphabeticString(summary).contains(toAlphabeticString(query))) {
-          bw.write(id + "\t" + query + "\tSUMMARY\t" + summary + "\n");
-        }
-        if (toAlphabeticString(explanation).contains(toAlphabeticString(query))) {
-          bw.write(id + "\t" + query + "\tEXPLANATION\t" + explanation + "\n");
-        }
+    // tasks are matched independently, and their lines are written in task order
+    (PARALLEL ? tasks.parallelStream() : tasks.stream())
+            .map(task -> toCorpusLines(task, id2related, id2logquery)).forEachOrdered(lines -> {
+              try {
+                bw.write(lines);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    bw.close();
+  }
+
+  private static String toCorpusLines(TaskNode task, SetMultimap<String, String> id2related,
+          Map<String, String> id2logquery) {
+    StringBuilder lines = new StringBuilder();
+    String id = task.getId();
+    if (id2logquery.containsKey(id)) {
+      String summary = task.getSummary();
+      String explanation = task.getExplanation();
+      String query = id2logquery.get(id);
+      if (toAlphabeticString(summary).contains(toAlphabeticString(query))) {
+        lines.append(id + "\t" + query + "\tSUMMARY\t" + summary + "\n");
+      }
+      if (toAlphabeticString(explanation).contains(toAlphabeticString(query))) {
+        lines.append(id + "\t" + query + "\tEXPLANATION\t" + explanation + "\n");
       }
-      List<Task> subtasks = Lists.newArrayList(task.getSubtasks());
-      task.getSubtasks().stream().map(Task::getSubtasks).forEach(subtasks::addAll);
-      for (Task subtask : subtasks) {
-        String summary = subtask.getSummary();
-        String explanation = subtask.getExplanation();
-        for (String related : id2related.get(id)) {
-          if (summary != null
-                  && toAlphabeticString(summary).contains(toAlphabeticString(related))) {
-            bw.write(id + "\t" + related + "\tSUMMARY\t" + summary + "\n");
-          }
-          if (toAlphabeticString(explanation).contains(toAlphabeticString(related))) {
-            bw.write(id + "\t" + related + "\tEXPLANATION\t" + explanation + "\n");
-          }
+    }
+    // the related queries of the task are compiled once, and each text is scanned once for all
+    List<String> related = Lists.newArrayList(id2related.get(id));
+    SubstringMatcher matcher = new SubstringMatcher(related.stream()
+            .map(QueryTaskBicorpusConstructor::toAlphabeticString).collect(Collectors.toList()));
+    List<TaskNode> subtasks = Lists.newArrayList(task.getSubtasks());
+    task.getSubtasks().stream().map(TaskNode::getSubtasks).forEach(subtasks::addAll);
+    for (TaskNode subtask : subtasks) {
+      String summary = subtask.getSummary();
+      String explanation = subtask.getExplanation();
+      BitSet inSummary = summary != null ? matcher.match(toAlphabeticString(summary))
+              : new BitSet();
+      BitSet inExplanation = matcher.match(toAlphabeticString(explanation));
+      for (int i = 0; i < related.size(); i++) {
+        if (inSummary.get(i)) {
+          lines.append(id + "\t" + related.get(i) + "\tSUMMARY\t" + summary + "\n");
+        }
+        if (inExplanation.get(i)) {
+          lines.append(id + "\t" + related.get(i) + "\tEXPLANATION\t" + explanation + "\n");
         }
       }
     }
-    bw.close();
+    return lines.toString();
   }
 
   public static String toAlphabeticString(String string) {
@@ -26,10 +26,8 @@ import com.google.common.io.Files;
 
 import eval.Evaluator;
 import eval.IntPair;
-import types.Task;
-import types.TaskExtractor;
-import types.WikidumpArticle;
-import types.WikidumpXmlAnalyzer;
+import types.TaskNode;
+import types.TaskSnapshot;
 import wrappers.FeatureLineUtil;
 
 public class SearchTaskSuggester {
@@ -41,22 +39,25 @@ public class SearchTaskSuggester {
     BiMap<String, String> query2id = HashBiMap.create();
     br.lines().map(line -> line.split("\t")).forEach(segs -> query2id.put(segs[1], segs[0]));
     // wikihow
-    WikidumpXmlAnalyzer analyzer = new WikidumpXmlAnalyzer("data/wikihow-matched-task.xml", null);
-    List<WikidumpArticle> articles = analyzer.getArticles();
-    TaskExtractor extractor = new TaskExtractor();
-    extractor.addWikidumpArticles(articles);
-    extractor.normalizeTasks();
-    extractor.buildHierarchy();
-    extractor.fillTaskIds();
-    List<Task> tasks = extractor.getTasks();
-    Map<String, Task> id2task = tasks.stream().collect(toMap(Task::getId, Function.identity()));
+    TaskSnapshot snapshot = TaskSnapshot.loadOrBuild("data/wikihow-matched-task.xml",
+            "data/wikihow-matched-task.snapshot");
+    // the queries of tasks deleted from the dump since the input was written have no task
+    List<String> deleted = query2id.values().stream()
+            .filter(id -> snapshot.isDeleted(Integer.parseInt(id))).collect(toList());
+    if (!deleted.isEmpty()) {
+      System.out.println("Skipping the queries of deleted tasks: " + deleted);
+      query2id.values().removeAll(deleted);
+    }
+    List<TaskNode> tasks = snapshot.getTasks(query2id.values());
+    Map<String, TaskNode> id2task = tasks.stream()
+            .collect(toMap(TaskNode::getId, Function.identity()));
     // generate pair files from wikihow article
     File corpusFile = File.createTempFile("e2e-sts-corpus-", ".tsv");
     BufferedWriter allFeaturesWriter = Files.newWriter(corpusFile, Charsets.UTF_8);
     for (String query : query2id.keySet()) {
       String id = query2id.get(query);
-      Task task = id2task.get(id);
-      for (Task subtask : task.getSubtasks()) {
+      TaskNode task = id2task.get(id);
+      for (TaskNode subtask : task.getSubtasks()) {
         String summary = subtask.getSummary();
         if (!(summary = Strings.nullToEmpty(summary).trim().replaceAll("\\s+", " ")).isEmpty())
           allFeaturesWriter.write(String.join("\t", id, "x", "SUMMARY", summary) + "\n");
@@ -0,0 +1,105 @@
+package processes;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import types.DocumentArchive;
+import types.SerpParser;
+import types.SerpRecord;
+
+// parses the Google and Bing result pages in one job: the pages of each archive are parsed in
+// parallel, each in one pass of a streaming html tokenizer, and their suggested queries and records
+// are written in id order
+public class SuggestedQueryExtractor {
+
+  // wget saves a result page as <id>.html, which is archived under its id with the name "html"
+  private static final String PAGE_NAME = "html";
+
+  public static class Source {
+
+    private String dir;
+
+    // the suggested query file, or null
+    private String output;
+
+    // the record file, or null
+    private String recordOutput;
+
+    // a new parser for each page
+    private Supplier<SerpParser> parsers;
+
+    public Source(String dir, String output, String recordOutput, Supplier<SerpParser> parsers) {
+      this.dir = dir;
+      this.output = output;
+      this.recordOutput = recordOutput;
+      this.parsers = parsers;
+    }
+
+  }
+
+  public static void main(String[] args) throws IOException {
+    extract(GoogleSuggestedQueryExtractor.SOURCE, BingSuggestedQueryExtractor.SOURCE);
+  }
+
+  public static void extract(Source... sources) throws IOException {
+    for (Source source : sources) {
+      // the pages of a download run are packed into the archive first, e.g. data/googlerp into
+      // data/googlerp.archive
+      File archiveFile = new File(source.dir + ".archive");
+      DocumentArchiveMigrator.migrateIfNewer(new File(source.dir), archiveFile);
+      try (DocumentArchive pages = DocumentArchive.openExisting(archiveFile)) {
+        extract(source, pages);
+      }
+    }
+  }
+
+  private static void extract(Source source, DocumentArchive pages) throws IOException {
+    List<String> ids = new ArrayList<>(pages.getIds());
+    Collections.sort(ids);
+    System.out.println(source.dir + ": " + ids.size() + " pages");
+    BufferedWriter bw = source.output == null ? null
+            : Files.newWriter(new File(source.output), Charsets.UTF_8);
+    BufferedWriter recordBw = source.recordOutput == null ? null
+            : Files.newWriter(new File(source.recordOutput), Charsets.UTF_8);
+    ids.parallelStream().filter(id -> pages.contains(id, PAGE_NAME)).map(id -> {
+      try {
+        return extract(id, pages.getString(id, PAGE_NAME), source.parsers.get());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }).forEachOrdered(record -> {
+      try {
+        if (bw != null) {
+          bw.write(record.toSuggestedQueryLine());
+        }
+        if (recordBw != null) {
+          recordBw.write(record.toLine());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    if (bw != null) {
+      bw.close();
+    }
+    if (recordBw != null) {
+      recordBw.close();
+    }
+  }
+
+  public static SerpRecord extract(String id, String page, SerpParser parser) throws IOException {
+    parser.parse(new StringReader(page));
+    return new SerpRecord(id, parser);
+  }
+
+}
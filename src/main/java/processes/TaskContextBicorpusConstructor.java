@@ -28,6 +28,7 @@ import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
+import types.DocumentArchive;
 
 public class TaskContextBicorpusConstructor {
 
@@ -47,16 +48,22 @@ public class TaskContextBicorpusConstructor {
     StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
     ListMultimap<String, CoreMap> id2sentences = ArrayListMultimap.create();
     System.out.println("caching context");
+    // written by ContextExtractor
+    File contextDir = new File("data/context");
+    File contextFile = new File("data/context.archive");
+    DocumentArchiveMigrator.migrateIfNewer(contextDir, contextFile);
+    DocumentArchive contexts = DocumentArchive.openExisting(contextFile);
     int count = 0;
     for (String id : id2desc2loc.rowKeySet()) {
       System.out.println(count++ + "/" + id2desc2loc.rowKeySet().size());
-      File[] files = new File("data/context")
-              .listFiles((dir, name) -> name.startsWith(id + "-") && name.endsWith(".txt"));
-      for (File file : files) {
-        String context = Files.toString(file, Charsets.UTF_8).replaceAll("\\n+", ". ")
+      for (String name : contexts.getNames(id)) {
+        if (!name.endsWith(".txt")) {
+          continue;
+        }
+        String context = contexts.getString(id, name).replaceAll("\\n+", ". ")
                 .replace("...", ". ").replace(";", ". ").replaceAll("\\.[^\\p{ASCII}]+", ". ")
                 .replaceAll("\\s+", " ").trim();
-        System.out.print(context.length() + " " + file.getAbsolutePath() + " ");
+        System.out.print(context.length() + " " + id + "-" + name + " ");
         if (context.length() == 0 || CharMatcher.ASCII.countIn(context) < context.length() * 0.9
                 || CharMatcher.WHITESPACE.countIn(context) < context.length() * 0.1) {
           System.out.println("No");
@@ -68,6 +75,7 @@ public class TaskContextBicorpusConstructor {
         id2sentences.putAll(id, document.get(SentencesAnnotation.class));
       }
     }
+    contexts.close();
     ListMultimap<String, CoreMap> desc2sentences = ArrayListMultimap.create();
     System.out.println("caching desc");
     count = 0;
@@ -8,28 +8,31 @@ import java.util.List;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 
-import types.Task;
-import types.TaskExtractor;
-import types.WikidumpArticle;
-import types.WikidumpXmlAnalyzer;
+import types.TaskNode;
+import types.TaskSnapshot;
+import types.TaskWriter;
 
 public class WikiHowIdSummaryExtractor {
 
   public static void main(String[] args) throws IOException {
-    WikidumpXmlAnalyzer analyzer = new WikidumpXmlAnalyzer("../wikihowcom-20141208-current.xml",
-            null);
-    List<WikidumpArticle> articles = analyzer.getArticles();
-    TaskExtractor extractor = new TaskExtractor();
-    extractor.addWikidumpArticles(articles);
-    extractor.normalizeTasks();
-    extractor.buildHierarchy();
-    extractor.fillTaskIds();
-    List<Task> tasks = extractor.getTasks();
+    TaskSnapshot snapshot = TaskSnapshot.loadOrBuild("../wikihowcom-20141208-current.xml",
+            "data/wikihow-task.snapshot");
+    List<TaskNode> tasks = snapshot.getTasks();
     BufferedWriter bw = Files.newWriter(new File("data/wikihow-id-summary.tsv"), Charsets.UTF_8);
-    for (Task task : tasks) {
+    for (TaskNode task : tasks) {
       bw.write(task.getId() + "\t" + task.getSummary() + "\n");
     }
     bw.close();
+    // optionally dump the full task corpus, e.g. "jsonl" writes data/wikihow-task.jsonl
+    if (args.length > 0) {
+      TaskWriter.Format format = TaskWriter.Format.valueOf(args[0].toUpperCase());
+      String extension = format == TaskWriter.Format.MARKDOWN ? "md" : args[0].toLowerCase();
+      try (TaskWriter writer = new TaskWriter(
+              Files.newWriter(new File("data/wikihow-task." + extension), Charsets.UTF_8),
+              format)) {
+        writer.writeAll(tasks);
+      }
+    }
   }
 
 }
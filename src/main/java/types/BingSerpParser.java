@@ -0,0 +1,83 @@
+package types;
+
+import java.util.Map;
+
+// suggested queries are the items of the lists in the element after a "Related searches" heading,
+// i.e. the list of the side one and both columns of the bottom one ("Related searches for ..."),
+// the query is the title without " - Bing"
+public class BingSerpParser extends SerpParser {
+
+  private static final String TITLE_SUFFIX = " - Bing";
+
+  private static final String HEADING = "Related searches";
+
+  private boolean inTitle;
+
+  private boolean inHeading;
+
+  // a related searches heading was seen, and the element after it is not open yet
+  private boolean related;
+
+  // the element after a related searches heading while it is open, or null
+  private String container;
+
+  // the depth of the container among the elements of the same name
+  private int containerDepth;
+
+  // the depth of the list within the container, 0 outside a list
+  private int listDepth;
+
+  @Override
+  public void startTag(String name, Map<String, String> attributes) {
+    if (related) {
+      related = false;
+      container = name;
+      containerDepth = 0;
+    }
+    if (name.equals(container)) {
+      containerDepth++;
+    }
+    if (name.equals("ul")) {
+      if (container != null) {
+        listDepth++;
+      }
+    } else if (isCapturing()) {
+      // an element within a title, heading or item
+      return;
+    } else if (name.equals("title")) {
+      inTitle = true;
+      startCapture();
+    } else if (name.equals("h2")) {
+      inHeading = true;
+      container = null;
+      listDepth = 0;
+      startCapture();
+    } else if (name.equals("li") && listDepth == 1) {
+      startCapture();
+    }
+  }
+
+  @Override
+  public void endTag(String name) {
+    if (name.equals("title") && inTitle) {
+      inTitle = false;
+      String text = endCapture();
+      if (text.endsWith(TITLE_SUFFIX)) {
+        query = text.substring(0, text.length() - TITLE_SUFFIX.length());
+      }
+    } else if (name.equals("h2") && inHeading) {
+      inHeading = false;
+      String text = endCapture();
+      related = text.equals(HEADING) || text.startsWith(HEADING + " for ");
+    } else if (name.equals("li") && listDepth == 1 && isCapturing()) {
+      suggestedQueries.add(endCapture());
+    } else if (name.equals("ul") && listDepth > 0) {
+      listDepth--;
+    }
+    if (name.equals(container) && --containerDepth == 0) {
+      container = null;
+      listDepth = 0;
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+package types;
+
+// approximate counts of items in a fixed table of depth rows by width counters: with epsilon and
+// delta, an estimate exceeds the true count by more than epsilon times the total count with
+// probability at most delta, and never underestimates it. Items are given by two 64 bit hashes, row
+// i uses hash1 + i * hash2. Updates are conservative, only the smallest counters of an item grow.
+public class CountMinSketch {
+
+  private int depth;
+
+  private int width;
+
+  private long[] counts;
+
+  private long total;
+
+  public CountMinSketch(double epsilon, double delta) {
+    this((int) Math.ceil(Math.log(1 / delta)), (int) Math.ceil(Math.E / epsilon));
+  }
+
+  public CountMinSketch(int depth, int width) {
+    this.depth = depth;
+    this.width = width;
+    this.counts = new long[depth * width];
+  }
+
+  private int cell(int row, long hash1, long hash2) {
+    return row * width + (int) Math.floorMod(hash1 + row * hash2, (long) width);
+  }
+
+  // adds count to the item, and returns its new estimate
+  public long add(long hash1, long hash2, long count) {
+    long estimate = estimate(hash1, hash2) + count;
+    for (int row = 0; row < depth; row++) {
+      int cell = cell(row, hash1, hash2);
+      counts[cell] = Math.max(counts[cell], estimate);
+    }
+    total += count;
+    return estimate;
+  }
+
+  public long estimate(long hash1, long hash2) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counts[cell(row, hash1, hash2)]);
+    }
+    return estimate;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+}
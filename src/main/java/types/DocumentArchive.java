@@ -0,0 +1,272 @@
+package types;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// an append-only archive of many small documents, e.g. result pages and their context pages, keyed
+// by an id and a name, such as a task id and "01.txt". Each record holds its length, the id and the
+// name, the raw length and the deflated content. The index from an id to the offsets of its
+// documents is rebuilt from the record headers on open, so appending is a single write and a
+// record cut short by a crash is dropped; a later record of the same id and name replaces an
+// earlier one. Records are read through memory-mapped windows of the file.
+public class DocumentArchive implements Closeable {
+
+  private static final int MAGIC = 0x444f4341;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 8;
+
+  // the lengths of the id and the name, and the raw length
+  private static final int MIN_RECORD_SIZE = 2 + 2 + Integer.BYTES;
+
+  // a window maps twice the stride from its start, so a record of at most the stride is always
+  // within the window of its offset
+  private static final long WINDOW_STRIDE = 1L << 29;
+
+  private File file;
+
+  private FileChannel channel;
+
+  private long size;
+
+  private List<MappedByteBuffer> windows = new ArrayList<>();
+
+  // the size of the file when the windows were mapped
+  private long mappedSize;
+
+  private Map<String, TreeMap<String, Long>> id2name2offset = new HashMap<>();
+
+  private int documentCount;
+
+  private DocumentArchive(File file) throws IOException {
+    this.file = file;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE);
+    if (channel.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+      header.flip();
+      write(header, 0);
+    }
+    size = channel.size();
+    map();
+    if (size < HEADER_SIZE || windows.get(0).getInt(0) != MAGIC
+            || windows.get(0).getInt(4) != VERSION) {
+      channel.close();
+      throw new IOException("Not a document archive: " + file);
+    }
+    long offset = HEADER_SIZE;
+    long next;
+    while ((next = index(offset)) >= 0) {
+      offset = next;
+    }
+    if (offset < size) {
+      System.out.println(file + ": dropped a truncated or corrupt record at " + offset);
+      channel.truncate(offset);
+      size = offset;
+      map();
+    }
+  }
+
+  // opens the archive, or creates an empty one
+  public static DocumentArchive open(File file) throws IOException {
+    return new DocumentArchive(file);
+  }
+
+  // opens an archive to read, which unlike open fails if there is none
+  public static DocumentArchive openExisting(File file) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException("No document archive: " + file);
+    }
+    return new DocumentArchive(file);
+  }
+
+  private void map() throws IOException {
+    windows.clear();
+    for (long start = 0; start < size; start += WINDOW_STRIDE) {
+      windows.add(channel.map(MapMode.READ_ONLY, start, Math.min(size - start,
+              2 * WINDOW_STRIDE)));
+    }
+    mappedSize = size;
+  }
+
+  // the record at offset [offset, offset + length), remapped if it was appended since
+  private synchronized ByteBuffer window(long offset, int length) throws IOException {
+    if (offset + length > mappedSize) {
+      map();
+    }
+    int window = (int) (offset / WINDOW_STRIDE);
+    ByteBuffer buffer = windows.get(window).duplicate();
+    int position = (int) (offset - window * WINDOW_STRIDE);
+    buffer.limit(position + length).position(position);
+    return buffer.slice();
+  }
+
+  // indexes the record at offset and returns the offset of the next one, or -1 if there is no
+  // complete record at offset; a record with a corrupt length is treated as a truncated one
+  private long index(long offset) throws IOException {
+    if (offset + Integer.BYTES > size) {
+      return -1;
+    }
+    int length = window(offset, Integer.BYTES).getInt();
+    if (length < MIN_RECORD_SIZE || length > WINDOW_STRIDE
+            || offset + Integer.BYTES + length > size) {
+      return -1;
+    }
+    ByteBuffer record = window(offset + Integer.BYTES, length);
+    String id;
+    String name;
+    try {
+      id = readString(record);
+      name = readString(record);
+    } catch (BufferUnderflowException e) {
+      return -1;
+    }
+    if (record.remaining() < Integer.BYTES || record.getInt(record.position()) < 0) {
+      return -1;
+    }
+    if (id2name2offset.computeIfAbsent(id, k -> new TreeMap<>()).put(name, offset) == null) {
+      documentCount++;
+    }
+    return offset + Integer.BYTES + length;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void write(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  public synchronized void append(String id, String name, byte[] content) throws IOException {
+    byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (idBytes.length > 0xffff || nameBytes.length > 0xffff) {
+      throw new IllegalArgumentException("Id or name too long: " + id + " " + name);
+    }
+    byte[] compressed = deflate(content);
+    int length = 2 + idBytes.length + 2 + nameBytes.length + Integer.BYTES + compressed.length;
+    if (length > WINDOW_STRIDE) {
+      throw new IOException("Document larger than " + WINDOW_STRIDE + " bytes: " + id + " "
+              + name);
+    }
+    ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+    record.putInt(length).putShort((short) idBytes.length).put(idBytes)
+            .putShort((short) nameBytes.length).put(nameBytes).putInt(content.length)
+            .put(compressed);
+    record.flip();
+    write(record, size);
+    if (id2name2offset.computeIfAbsent(id, k -> new TreeMap<>()).put(name, size) == null) {
+      documentCount++;
+    }
+    size += Integer.BYTES + length;
+  }
+
+  public void append(String id, String name, String content) throws IOException {
+    append(id, name, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] deflate(byte[] content) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(content);
+    deflater.finish();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2 + 64);
+    byte[] buffer = new byte[64 * 1024];
+    while (!deflater.finished()) {
+      baos.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    return baos.toByteArray();
+  }
+
+  public synchronized Set<String> getIds() {
+    return new HashSet<>(id2name2offset.keySet());
+  }
+
+  // the names of the documents of an id, sorted
+  public synchronized List<String> getNames(String id) {
+    TreeMap<String, Long> name2offset = id2name2offset.get(id);
+    return name2offset == null ? new ArrayList<>() : new ArrayList<>(name2offset.keySet());
+  }
+
+  public synchronized boolean contains(String id, String name) {
+    TreeMap<String, Long> name2offset = id2name2offset.get(id);
+    return name2offset != null && name2offset.containsKey(name);
+  }
+
+  // the content of a document, or null
+  public byte[] get(String id, String name) throws IOException {
+    Long offset;
+    synchronized (this) {
+      TreeMap<String, Long> name2offset = id2name2offset.get(id);
+      offset = name2offset == null ? null : name2offset.get(name);
+    }
+    if (offset == null) {
+      return null;
+    }
+    int length = window(offset, Integer.BYTES).getInt();
+    ByteBuffer record = window(offset + Integer.BYTES, length);
+    record.position(record.position() + 2 + (record.getShort(record.position()) & 0xffff));
+    record.position(record.position() + 2 + (record.getShort(record.position()) & 0xffff));
+    byte[] content = new byte[record.getInt()];
+    byte[] compressed = new byte[record.remaining()];
+    record.get(compressed);
+    Inflater inflater = new Inflater();
+    inflater.setInput(compressed);
+    try {
+      int n = 0;
+      while (n < content.length && !inflater.finished()) {
+        if (inflater.needsInput()) {
+          throw new DataFormatException("unexpected end of content");
+        }
+        n += inflater.inflate(content, n, content.length - n);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt record of " + id + " " + name + " in " + file, e);
+    } finally {
+      inflater.end();
+    }
+    return content;
+  }
+
+  public String getString(String id, String name) throws IOException {
+    byte[] content = get(id, name);
+    return content == null ? null : new String(content, StandardCharsets.UTF_8);
+  }
+
+  public synchronized int getDocumentCount() {
+    return documentCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    windows.clear();
+    channel.close();
+  }
+
+}
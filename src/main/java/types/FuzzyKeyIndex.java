@@ -0,0 +1,232 @@
+package types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// finds the alphabetic key within a small edit distance (insertions, deletions, substitutions and
+// adjacent transpositions) of a query key, SymSpell style: every key is indexed under the strings
+// obtained by deleting up to maxDistance characters from its prefix, so a lookup only probes the
+// deletes of the query prefix and verifies the few candidates of a close length. The prefixes are
+// packed into longs, six bits per character, hence only ascii keys are indexed, and a key allows one
+// edit per four characters at most.
+public class FuzzyKeyIndex {
+
+  private static final int PREFIX_LENGTH = 9;
+
+  private static final int CHARS_PER_EDIT = 4;
+
+  // the sets of deleted prefix positions, by prefix length and number of deletes
+  private static final int[][][] DELETE_MASKS = new int[PREFIX_LENGTH + 1][][];
+
+  static {
+    for (int length = 0; length <= PREFIX_LENGTH; length++) {
+      List<List<Integer>> masks = new ArrayList<>();
+      for (int mask = 0; mask < 1 << length; mask++) {
+        int count = Integer.bitCount(mask);
+        while (masks.size() <= count) {
+          masks.add(new ArrayList<>());
+        }
+        masks.get(count).add(mask);
+      }
+      DELETE_MASKS[length] = masks.stream()
+              .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+              .toArray(int[][]::new);
+    }
+  }
+
+  private int maxDistance;
+
+  // sorted keys and their ids
+  private byte[][] keys;
+
+  private String[] ids;
+
+  // open addressing table from a packed delete to the head of its candidate list
+  private long[] tableDeletes;
+
+  private int[] tableHeads;
+
+  private int[] candidateKeys;
+
+  private int[] candidateNexts;
+
+  // the length of the candidate key, next to the list links
+  private int[] candidateLengths;
+
+  private int candidateCount;
+
+  public FuzzyKeyIndex(Map<String, String> string2id, int maxDistance) {
+    this.maxDistance = maxDistance;
+    List<String> asciiKeys = new ArrayList<>();
+    for (String key : string2id.keySet()) {
+      if (key.chars().allMatch(c -> c < 0x80)) {
+        asciiKeys.add(key);
+      }
+    }
+    asciiKeys.sort(null);
+    keys = new byte[asciiKeys.size()][];
+    ids = new String[asciiKeys.size()];
+    int deleteCount = 0;
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = asciiKeys.get(i).getBytes(StandardCharsets.US_ASCII);
+      ids[i] = string2id.get(asciiKeys.get(i));
+      int prefixLength = Math.min(keys[i].length, PREFIX_LENGTH);
+      for (int d = 0; d <= maxDistance(keys[i].length) && d <= prefixLength; d++) {
+        deleteCount += DELETE_MASKS[prefixLength][d].length;
+      }
+    }
+    int capacity = Integer.highestOneBit(Math.max(2 * deleteCount, 16) - 1) << 1;
+    tableDeletes = new long[capacity];
+    tableHeads = new int[capacity];
+    Arrays.fill(tableHeads, -1);
+    candidateKeys = new int[deleteCount];
+    candidateNexts = new int[deleteCount];
+    candidateLengths = new int[deleteCount];
+    for (int i = 0; i < keys.length; i++) {
+      int prefixLength = Math.min(keys[i].length, PREFIX_LENGTH);
+      for (int d = 0; d <= maxDistance(keys[i].length) && d <= prefixLength; d++) {
+        for (int mask : DELETE_MASKS[prefixLength][d]) {
+          add(pack(keys[i], prefixLength, mask), i);
+        }
+      }
+    }
+  }
+
+  private int maxDistance(int keyLength) {
+    return Math.min(maxDistance, keyLength / CHARS_PER_EDIT);
+  }
+
+  // the characters of the prefix not in the mask in the low 54 bits, then their count; characters
+  // other than [0-9a-z] may collide, candidates are verified anyway
+  private static long pack(byte[] key, int prefixLength, int mask) {
+    long packed = 0;
+    int count = 0;
+    for (int i = 0; i < prefixLength; i++) {
+      if ((mask & 1 << i) == 0) {
+        int b = key[i];
+        packed = packed << 6 | (b <= '9' ? b - '0' + 1 : b - 'a' + 11) & 0x3f;
+        count++;
+      }
+    }
+    return (long) count << 54 | packed;
+  }
+
+  // the murmur3 finalizer, every bit of the delete affects the slot
+  private static int slot(long delete, int mask) {
+    long hash = delete;
+    hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+    return (int) (hash ^ hash >>> 33) & mask;
+  }
+
+  private void add(long delete, int key) {
+    int mask = tableDeletes.length - 1;
+    int slot = slot(delete, mask);
+    while (tableHeads[slot] >= 0 && tableDeletes[slot] != delete) {
+      slot = (slot + 1) & mask;
+    }
+    int head = tableHeads[slot];
+    if (head >= 0 && candidateKeys[head] == key) {
+      // the same delete of a prefix with repeated characters
+      return;
+    }
+    tableDeletes[slot] = delete;
+    candidateKeys[candidateCount] = key;
+    candidateNexts[candidateCount] = head;
+    candidateLengths[candidateCount] = keys[key].length;
+    tableHeads[slot] = candidateCount++;
+  }
+
+  // the id of the closest key within the allowed distance of key[0, length), the smallest key on a
+  // tie, or null; the exact key is expected to be looked up before
+  public String lookup(byte[] key, int length) {
+    for (int i = 0; i < length; i++) {
+      if (key[i] < 0) {
+        return null;
+      }
+    }
+    int prefixLength = Math.min(length, PREFIX_LENGTH);
+    int mask = tableDeletes.length - 1;
+    int best = -1;
+    int bestDistance = maxDistance + 1;
+    int[] rows = null;
+    for (int d = 0; d <= maxDistance && d <= prefixLength; d++) {
+      for (int deleteMask : DELETE_MASKS[prefixLength][d]) {
+        long delete = pack(key, prefixLength, deleteMask);
+        int slot = slot(delete, mask);
+        while (tableHeads[slot] >= 0 && tableDeletes[slot] != delete) {
+          slot = (slot + 1) & mask;
+        }
+        for (int c = tableHeads[slot]; c >= 0; c = candidateNexts[c]) {
+          if (Math.abs(candidateLengths[c] - length) > maxDistance) {
+            continue;
+          }
+          int candidate = candidateKeys[c];
+          byte[] candidateKey = keys[candidate];
+          int allowed = Math.min(maxDistance(candidateKey.length),
+                  candidate < best ? bestDistance : bestDistance - 1);
+          if (Math.abs(candidateKey.length - length) > allowed) {
+            continue;
+          }
+          if (rows == null || rows.length < 3 * (candidateKey.length + 1)) {
+            rows = new int[3 * (Math.max(candidateKey.length, length) + 1)];
+          }
+          int distance = distance(key, length, candidateKey, allowed, rows);
+          if (distance <= allowed
+                  && (distance < bestDistance || distance == bestDistance && candidate < best)) {
+            best = candidate;
+            bestDistance = distance;
+          }
+        }
+      }
+    }
+    return best < 0 ? null : ids[best];
+  }
+
+  // the optimal string alignment distance, or bound + 1 once it is exceeded; only the cells within
+  // bound of the diagonal are computed, and rows holds the rows i - 2, i - 1 and i of the table
+  private static int distance(byte[] a, int aLength, byte[] b, int bound, int[] rows) {
+    int n = b.length;
+    int exceeded = bound + 1;
+    if (Math.abs(aLength - n) > bound) {
+      return exceeded;
+    }
+    int twoBack = 0;
+    int previous = n + 1;
+    int current = 2 * (n + 1);
+    for (int j = 0; j <= n; j++) {
+      rows[previous + j] = Math.min(j, exceeded);
+    }
+    for (int i = 1; i <= aLength; i++) {
+      int from = Math.max(1, i - bound);
+      int to = Math.min(n, i + bound);
+      rows[current + from - 1] = from == 1 ? Math.min(i, exceeded) : exceeded;
+      int rowMin = rows[current + from - 1];
+      for (int j = from; j <= to; j++) {
+        int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+        int value = Math.min(Math.min(rows[previous + j] + 1, rows[current + j - 1] + 1),
+                rows[previous + j - 1] + cost);
+        if (i > 1 && j > 1 && a[i - 1] == b[j - 2] && a[i - 2] == b[j - 1]) {
+          value = Math.min(value, rows[twoBack + j - 2] + 1);
+        }
+        rows[current + j] = Math.min(value, exceeded);
+        rowMin = Math.min(rowMin, value);
+      }
+      if (to < n) {
+        rows[current + to + 1] = exceeded;
+      }
+      if (rowMin > bound) {
+        return exceeded;
+      }
+      int row = twoBack;
+      twoBack = previous;
+      previous = current;
+      current = row;
+    }
+    return rows[previous + n];
+  }
+
+}
@@ -0,0 +1,51 @@
+package types;
+
+import java.util.Map;
+
+import types.SerpRecord.Result;
+
+// suggested queries are the <p class="_e4b"> elements, results are the links with an onmousedown
+// handler, and the query is the title without " - Google Search"
+public class GoogleSerpParser extends SerpParser {
+
+  private static final String TITLE_SUFFIX = " - Google Search";
+
+  private String captured;
+
+  @Override
+  public void startTag(String name, Map<String, String> attributes) {
+    if (name.equals("a") && attributes.containsKey("href")
+            && attributes.containsKey("onmousedown")) {
+      // browsers drop tabs and line breaks from a url, and they separate the record fields
+      String url = attributes.get("href").replaceAll("[\t\n\r]", "");
+      results.add(new Result(results.size() + 1, url,
+              url.contains("wikihow") || url.contains("google")));
+    }
+    if (isCapturing()) {
+      return;
+    }
+    if (name.equals("title")) {
+      captured = name;
+      startCapture();
+    } else if (name.equals("p") && "_e4b".equals(attributes.get("class"))) {
+      captured = name;
+      startCapture();
+    }
+  }
+
+  @Override
+  public void endTag(String name) {
+    if (!isCapturing() || !name.equals(captured)) {
+      return;
+    }
+    String text = endCapture();
+    if (name.equals("title")) {
+      if (text.endsWith(TITLE_SUFFIX)) {
+        query = text.substring(0, text.length() - TITLE_SUFFIX.length());
+      }
+    } else {
+      suggestedQueries.add(text);
+    }
+  }
+
+}
@@ -0,0 +1,243 @@
+package types;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+// splits html into start tags, end tags and text in a single pass over a reader, without building
+// a tree or backtracking. Tag and attribute names are lowercased, text and attribute values are
+// kept as they are (entities are not decoded). Comments, doctypes and processing instructions are
+// skipped, and so is the content of script and style elements, which may contain '<'; the content
+// of title and textarea elements is text, tags included.
+public class HtmlTokenizer {
+
+  public interface Handler {
+
+    void startTag(String name, Map<String, String> attributes);
+
+    void endTag(String name);
+
+    void text(String text);
+
+  }
+
+  private Reader reader;
+
+  private char[] buffer = new char[8192];
+
+  private int pos;
+
+  private int end;
+
+  // a char read ahead and given back, or -1
+  private int pushedBack = -1;
+
+  private StringBuilder text = new StringBuilder();
+
+  public HtmlTokenizer(Reader reader) {
+    this.reader = reader;
+  }
+
+  private int read() throws IOException {
+    if (pushedBack >= 0) {
+      int c = pushedBack;
+      pushedBack = -1;
+      return c;
+    }
+    if (pos == end) {
+      end = reader.read(buffer, 0, buffer.length);
+      pos = 0;
+      if (end <= 0) {
+        end = 0;
+        return -1;
+      }
+    }
+    return buffer[pos++];
+  }
+
+  private void pushBack(int c) {
+    pushedBack = c;
+  }
+
+  public void tokenize(Handler handler) throws IOException {
+    int c;
+    while ((c = read()) >= 0) {
+      if (c != '<') {
+        text.append((char) c);
+        continue;
+      }
+      int next = read();
+      if (next == '/') {
+        String name = readName();
+        if (name.isEmpty()) {
+          text.append("</");
+          continue;
+        }
+        skipTag();
+        flushText(handler);
+        handler.endTag(name);
+      } else if (next == '!' || next == '?') {
+        flushText(handler);
+        if (next == '!' && skipComment()) {
+          continue;
+        }
+        skipTag();
+      } else if (Character.isLetter(next)) {
+        pushBack(next);
+        String name = readName();
+        flushText(handler);
+        handler.startTag(name, readAttributes());
+        if (name.equals("script") || name.equals("style")) {
+          readRawText(name);
+          text.setLength(0);
+          handler.endTag(name);
+        } else if (name.equals("title") || name.equals("textarea")) {
+          readRawText(name);
+          flushText(handler);
+          handler.endTag(name);
+        }
+      } else {
+        text.append('<');
+        if (next >= 0) {
+          pushBack(next);
+        }
+      }
+    }
+    flushText(handler);
+  }
+
+  private void flushText(Handler handler) {
+    if (text.length() > 0) {
+      handler.text(text.toString());
+      text.setLength(0);
+    }
+  }
+
+  // the lowercased name up to a space, '/' or '>', which is given back
+  private String readName() throws IOException {
+    StringBuilder name = new StringBuilder();
+    int c;
+    while ((c = read()) >= 0 && !Character.isWhitespace(c) && c != '/' && c != '>') {
+      name.append(Character.toLowerCase((char) c));
+    }
+    if (c >= 0) {
+      pushBack(c);
+    }
+    return name.toString();
+  }
+
+  private Map<String, String> readAttributes() throws IOException {
+    Map<String, String> attributes = new HashMap<>();
+    int c;
+    while ((c = read()) >= 0 && c != '>') {
+      if (Character.isWhitespace(c) || c == '/') {
+        continue;
+      }
+      pushBack(c);
+      String name = readAttributeName();
+      c = skipWhitespace();
+      if (c != '=') {
+        attributes.put(name, "");
+        if (c >= 0) {
+          pushBack(c);
+        }
+        continue;
+      }
+      c = skipWhitespace();
+      StringBuilder value = new StringBuilder();
+      if (c == '"' || c == '\'') {
+        int quote = c;
+        while ((c = read()) >= 0 && c != quote) {
+          value.append((char) c);
+        }
+      } else {
+        while (c >= 0 && !Character.isWhitespace(c) && c != '>') {
+          value.append((char) c);
+          c = read();
+        }
+        if (c >= 0) {
+          pushBack(c);
+        }
+      }
+      attributes.put(name, value.toString());
+    }
+    return attributes;
+  }
+
+  private String readAttributeName() throws IOException {
+    StringBuilder name = new StringBuilder();
+    int c;
+    while ((c = read()) >= 0 && !Character.isWhitespace(c) && c != '=' && c != '>'
+            && c != '/') {
+      name.append(Character.toLowerCase((char) c));
+    }
+    if (c >= 0) {
+      pushBack(c);
+    }
+    return name.toString();
+  }
+
+  private int skipWhitespace() throws IOException {
+    int c;
+    while ((c = read()) >= 0 && Character.isWhitespace(c)) {
+    }
+    return c;
+  }
+
+  private void skipTag() throws IOException {
+    int c;
+    while ((c = read()) >= 0 && c != '>') {
+    }
+  }
+
+  // after "<!", skips a comment up to "-->" if it is one
+  private boolean skipComment() throws IOException {
+    int c = read();
+    if (c != '-') {
+      if (c >= 0) {
+        pushBack(c);
+      }
+      return false;
+    }
+    c = read();
+    if (c != '-') {
+      if (c >= 0) {
+        pushBack(c);
+      }
+      return false;
+    }
+    int dashes = 0;
+    while ((c = read()) >= 0) {
+      if (c == '>' && dashes >= 2) {
+        return true;
+      }
+      dashes = c == '-' ? dashes + 1 : 0;
+    }
+    return true;
+  }
+
+  // reads the text up to the end tag of the element, "</" followed by its name in any case; no
+  // prefix of that end tag repeats its '<', so a mismatched char can only start the next attempt
+  private void readRawText(String name) throws IOException {
+    String endTag = "</" + name;
+    int matched = 0;
+    int c;
+    while ((c = read()) >= 0) {
+      if (Character.toLowerCase((char) c) == endTag.charAt(matched)) {
+        text.append((char) c);
+        if (++matched == endTag.length()) {
+          text.setLength(text.length() - matched);
+          skipTag();
+          return;
+        }
+      } else if (matched > 0) {
+        matched = 0;
+        pushBack(c);
+      } else {
+        text.append((char) c);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+package types;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+
+// fetches pages asynchronously over a pool of keep-alive connections: a few io threads drive all
+// the requests instead of one blocked thread each, at most maxConnectionsPerHost connections are
+// open to a host, and at most maxPending requests are in flight. The pages are handled, e.g. by
+// boilerpipe, on a worker pool, and awaitCompletion waits until every page fetched so far has been
+// handled or has failed.
+public class PageFetcher implements Closeable {
+
+  public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+  public static final int DEFAULT_TIMEOUT = 2000;
+
+  public static final int DEFAULT_MAX_PENDING = 2000;
+
+  public interface PageHandler {
+
+    void handle(String html) throws Exception;
+
+  }
+
+  private CloseableHttpAsyncClient client;
+
+  private ExecutorService workers;
+
+  private int maxPending;
+
+  // a permit per request in flight, from sending it until its page is handled
+  private Semaphore pending;
+
+  public PageFetcher() throws IOException {
+    this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_TIMEOUT,
+            DEFAULT_MAX_PENDING);
+  }
+
+  // timeout in milliseconds, to connect and between two packets
+  public PageFetcher(int maxConnections, int maxConnectionsPerHost, int timeout, int maxPending)
+          throws IOException {
+    IOReactorConfig reactorConfig = IOReactorConfig.custom().setConnectTimeout(timeout)
+            .setSoTimeout(timeout).build();
+    PoolingNHttpClientConnectionManager connections = new PoolingNHttpClientConnectionManager(
+            new DefaultConnectingIOReactor(reactorConfig));
+    connections.setMaxTotal(maxConnections);
+    connections.setDefaultMaxPerRoute(maxConnectionsPerHost);
+    RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(timeout)
+            .setSocketTimeout(timeout).build();
+    client = HttpAsyncClients.custom().setConnectionManager(connections)
+            .setDefaultRequestConfig(requestConfig).build();
+    client.start();
+    workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    this.maxPending = maxPending;
+    pending = new Semaphore(maxPending);
+  }
+
+  // sends the request and returns, the handler gets the page once it is fetched; blocks while
+  // maxPending requests are in flight
+  public void fetch(String url, PageHandler handler) throws InterruptedException {
+    HttpGet request;
+    try {
+      request = new HttpGet(url);
+    } catch (IllegalArgumentException e) {
+      System.out.println(url + ": " + e);
+      return;
+    }
+    pending.acquire();
+    try {
+      execute(request, url, handler);
+    } catch (RuntimeException e) {
+      // e.g. the client is closed, the callback will not run
+      System.out.println(url + ": " + e);
+      pending.release();
+    }
+  }
+
+  private void execute(HttpGet request, String url, PageHandler handler) {
+    client.execute(request, new FutureCallback<HttpResponse>() {
+
+      @Override
+      public void completed(HttpResponse response) {
+        try {
+          workers.execute(() -> {
+            try {
+              int status = response.getStatusLine().getStatusCode();
+              if (status >= 300) {
+                throw new HttpResponseException(status,
+                        response.getStatusLine().getReasonPhrase());
+              }
+              handler.handle(EntityUtils.toString(response.getEntity()));
+            } catch (Exception e) {
+              System.out.println(url + ": " + e);
+            } finally {
+              pending.release();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // the fetcher was closed
+          System.out.println(url + ": " + e);
+          pending.release();
+        }
+      }
+
+      @Override
+      public void failed(Exception e) {
+        System.out.println(url + ": " + e);
+        pending.release();
+      }
+
+      @Override
+      public void cancelled() {
+        pending.release();
+      }
+
+    });
+  }
+
+  public void awaitCompletion() throws InterruptedException {
+    pending.acquire(maxPending);
+    pending.release(maxPending);
+  }
+
+  // pages still in flight are dropped, awaitCompletion first to keep them
+  @Override
+  public void close() throws IOException {
+    workers.shutdown();
+    client.close();
+  }
+
+}
@@ -0,0 +1,216 @@
+package types;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+public class ParallelBlockInputStream extends InputStream {
+
+  public enum Format {
+    BZIP2, BGZF
+  }
+
+  public static final int DEFAULT_GROUP_SIZE = 1024 * 1024;
+
+  // "BZh" + block size + block header magic (pi)
+  private static final byte[] BZIP2_STREAM_MAGIC = { 'B', 'Z', 'h', 0, 0x31, 0x41, 0x59, 0x26,
+      0x53, 0x59 };
+
+  private static final int BGZF_HEADER_SIZE = 18;
+
+  private static final int SEARCH_WINDOW = 1024 * 1024;
+
+  // groups of independently compressed blocks are decompressed on the pool, and handed out in file
+  // order
+  private FileChannel channel;
+
+  private long size;
+
+  private Format format;
+
+  private int groupSize;
+
+  private ForkJoinPool pool;
+
+  private int maxGroupsInFlight;
+
+  private Deque<ForkJoinTask<byte[]>> inFlight;
+
+  private long nextStart;
+
+  private byte[] current;
+
+  private int pos;
+
+  public ParallelBlockInputStream(String filepath, Format format) throws IOException {
+    this(filepath, format, DEFAULT_GROUP_SIZE, ForkJoinPool.commonPool());
+  }
+
+  public ParallelBlockInputStream(String filepath, Format format, int groupSize,
+          ForkJoinPool pool) throws IOException {
+    this.channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+    this.size = channel.size();
+    this.format = format;
+    this.groupSize = groupSize;
+    this.pool = pool;
+    this.maxGroupsInFlight = 2 * pool.getParallelism();
+    this.inFlight = new ArrayDeque<>();
+    this.nextStart = 0;
+    this.current = new byte[0];
+    this.pos = 0;
+  }
+
+  public static boolean isMultistreamBzip2(String filepath) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+      long to = Math.min(channel.size(), 64L * SEARCH_WINDOW);
+      return findBzip2Stream(channel, BZIP2_STREAM_MAGIC.length, to) >= 0;
+    }
+  }
+
+  public static boolean isBgzf(String filepath) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+      return readBgzfBlockSize(channel, 0) > 0;
+    }
+  }
+
+  private static long findBzip2Stream(FileChannel channel, long from, long to)
+          throws IOException {
+    for (long pos = from; pos < to; pos += SEARCH_WINDOW) {
+      long length = Math.min(SEARCH_WINDOW + BZIP2_STREAM_MAGIC.length - 1, to - pos);
+      MappedByteBuffer window = channel.map(MapMode.READ_ONLY, pos, length);
+      for (int i = 0; i <= length - BZIP2_STREAM_MAGIC.length; i++) {
+        if (isBzip2StreamStart(window, i)) {
+          return pos + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isBzip2StreamStart(ByteBuffer buffer, int offset) {
+    for (int j = 0; j < BZIP2_STREAM_MAGIC.length; j++) {
+      byte b = buffer.get(offset + j);
+      if (j == 3 ? b < '1' || b > '9' : b != BZIP2_STREAM_MAGIC[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // total size of the BGZF member starting at offset, or -1 if it is not a BGZF member
+  private static long readBgzfBlockSize(FileChannel channel, long offset) throws IOException {
+    if (offset + BGZF_HEADER_SIZE > channel.size()) {
+      return -1;
+    }
+    ByteBuffer header = channel.map(MapMode.READ_ONLY, offset, BGZF_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    if ((header.get(0) & 0xFF) != 0x1f || (header.get(1) & 0xFF) != 0x8b
+            || header.get(2) != 8 || (header.get(3) & 4) == 0 || header.getShort(10) != 6
+            || header.get(12) != 'B' || header.get(13) != 'C' || header.getShort(14) != 2) {
+      return -1;
+    }
+    return (header.getShort(16) & 0xFFFF) + 1;
+  }
+
+  private long nextGroupEnd(long start) throws IOException {
+    if (format == Format.BGZF) {
+      long end = start;
+      while (end < size && end - start < groupSize) {
+        long blockSize = readBgzfBlockSize(channel, end);
+        if (blockSize < 0) {
+          throw new IOException("Invalid BGZF block at offset " + end);
+        }
+        end += blockSize;
+      }
+      return Math.min(end, size);
+    }
+    long end = findBzip2Stream(channel, start + groupSize, size);
+    return end < 0 ? size : end;
+  }
+
+  private byte[] decode(long start, long end) throws IOException {
+    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+    InputStream bis = new ByteBufferInputStream(buffer);
+    try (InputStream is = format == Format.BGZF ? new GZIPInputStream(bis)
+            : new BZip2CompressorInputStream(bis, true)) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream((int) (end - start) * 8);
+      byte[] bytes = new byte[64 * 1024];
+      int n;
+      while ((n = is.read(bytes)) > 0) {
+        baos.write(bytes, 0, n);
+      }
+      return baos.toByteArray();
+    }
+  }
+
+  private void fillInFlight() throws IOException {
+    while (inFlight.size() < maxGroupsInFlight && nextStart < size) {
+      long start = nextStart;
+      long end = nextGroupEnd(start);
+      inFlight.add(pool.submit(() -> decode(start, end)));
+      nextStart = end;
+    }
+  }
+
+  private boolean ensureAvailable() throws IOException {
+    while (pos >= current.length) {
+      fillInFlight();
+      if (inFlight.isEmpty()) {
+        return false;
+      }
+      try {
+        current = inFlight.poll().join();
+      } catch (RuntimeException e) {
+        throw new IOException(e);
+      }
+      pos = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return ensureAvailable() ? current[pos++] & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureAvailable()) {
+      return -1;
+    }
+    len = Math.min(len, current.length - pos);
+    System.arraycopy(current, pos, b, off, len);
+    pos += len;
+    return len;
+  }
+
+  @Override
+  public int available() {
+    return current.length - pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inFlight.forEach(task -> task.cancel(true));
+    inFlight.clear();
+    channel.close();
+  }
+
+}
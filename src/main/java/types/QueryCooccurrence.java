@@ -0,0 +1,141 @@
+package types;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.hash.Hashing;
+
+import types.QueryLogSessionizer.SessionListener;
+
+// counts how often queries follow the queries of a task in bounded memory: the (task, query) pairs
+// go to a count-min sketch, and only the k queries with the highest estimates are kept per task.
+// Pairs can be added from several threads, e.g. by the shards of a log as they are matched.
+public class QueryCooccurrence {
+
+  private CountMinSketch sketch;
+
+  private int k;
+
+  private Map<String, TopQueries> tops = new HashMap<>();
+
+  public QueryCooccurrence(double epsilon, double delta, int k) {
+    this.sketch = new CountMinSketch(epsilon, delta);
+    this.k = k;
+  }
+
+  // the two halves of the 128 bit hash of the pair
+  private static long[] hash(String taskId, String query) {
+    ByteBuffer buffer = ByteBuffer.wrap(Hashing.murmur3_128().newHasher()
+            .putString(taskId, StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(query, StandardCharsets.UTF_8).hash().asBytes());
+    return new long[] { buffer.getLong(), buffer.getLong() };
+  }
+
+  public void add(String taskId, String query) {
+    long[] hash = hash(taskId, query);
+    synchronized (this) {
+      long estimate = sketch.add(hash[0], hash[1], 1);
+      tops.computeIfAbsent(taskId, id -> new TopQueries(k)).offer(query, estimate);
+    }
+  }
+
+  public long estimate(String taskId, String query) {
+    long[] hash = hash(taskId, query);
+    return sketch.estimate(hash[0], hash[1]);
+  }
+
+  public Set<String> getTaskIds() {
+    return tops.keySet();
+  }
+
+  // the top queries of a task, by decreasing estimate
+  public List<String> getTopQueries(String taskId) {
+    TopQueries top = tops.get(taskId);
+    List<String> queries = new ArrayList<>();
+    if (top == null) {
+      return queries;
+    }
+    for (int i = 0; i < top.size; i++) {
+      queries.add(top.queries[i]);
+    }
+    queries.sort(Comparator.comparing((String query) -> -estimate(taskId, query))
+            .thenComparing(Comparator.naturalOrder()));
+    return queries;
+  }
+
+  public long getTotal() {
+    return sketch.getTotal();
+  }
+
+  // adds the distinct follow-up queries of each session, lowercased, as (task id, query) pairs
+  public static class PairCollector implements SessionListener {
+
+    private QueryCooccurrence cooccurrence;
+
+    private String taskId;
+
+    private Set<String> queries = new HashSet<>();
+
+    public PairCollector(QueryCooccurrence cooccurrence) {
+      this.cooccurrence = cooccurrence;
+    }
+
+    @Override
+    public void startSession(String userId, String taskId, String query, long time) {
+      this.taskId = taskId;
+      queries.clear();
+    }
+
+    @Override
+    public void addQuery(String query, long time) {
+      String lowercased = query.toLowerCase();
+      if (queries.add(lowercased)) {
+        cooccurrence.add(taskId, lowercased);
+      }
+    }
+
+  }
+
+  private static class TopQueries {
+
+    private String[] queries;
+
+    private long[] estimates;
+
+    private int size;
+
+    private TopQueries(int k) {
+      this.queries = new String[k];
+      this.estimates = new long[k];
+    }
+
+    private void offer(String query, long estimate) {
+      int min = 0;
+      for (int i = 0; i < size; i++) {
+        if (queries[i].equals(query)) {
+          estimates[i] = estimate;
+          return;
+        }
+        if (estimates[i] < estimates[min]) {
+          min = i;
+        }
+      }
+      if (size < queries.length) {
+        queries[size] = query;
+        estimates[size++] = estimate;
+      } else if (size > 0 && estimate > estimates[min]) {
+        queries[min] = query;
+        estimates[min] = estimate;
+      }
+    }
+
+  }
+
+}
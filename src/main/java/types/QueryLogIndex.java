@@ -0,0 +1,464 @@
+package types;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+// an inverted index of the AOL query log from the alphabetic key of a query to its postings. The
+// records file keeps the user id, query and time of every query of at least two words, in log order,
+// as "user\tquery\ttime\n" lines. The index file holds the postings (key hash, record offset, time,
+// user id) sorted by key hash and offset, and is memory-mapped to binary search a key; the session
+// of a posting is then read with a short seek into the records. The index header also keeps the
+// path, size and modification time of each log it was built from, so a changed log is noticed.
+public class QueryLogIndex implements Closeable {
+
+  private static final int MAGIC = 0x514c4958;
+
+  private static final int VERSION = 2;
+
+  // key hash, record offset, time, user id
+  private static final int POSTING_SIZE = 24;
+
+  private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+
+  public static class Posting {
+
+    private long offset;
+
+    private long time;
+
+    private int userId;
+
+    public Posting(long offset, long time, int userId) {
+      this.offset = offset;
+      this.time = time;
+      this.userId = userId;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public int getUserId() {
+      return userId;
+    }
+
+  }
+
+  private FileChannel records;
+
+  private MappedByteBuffer postings;
+
+  private int postingCount;
+
+  // the postings start after the log list of the header
+  private int postingsOffset;
+
+  private List<String> logFilepaths = new ArrayList<>();
+
+  private List<Long> logSizes = new ArrayList<>();
+
+  private List<Long> logLastModifieds = new ArrayList<>();
+
+  private QueryLogParser parser = new QueryLogParser(Collections.emptyMap());
+
+  private QueryLogIndex(File recordsFile, File indexFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Index larger than 2GB is not supported: " + indexFile);
+      }
+      postings = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (postings.getInt(0) != MAGIC || postings.getInt(4) != VERSION) {
+      throw new IOException("Not a query log index: " + indexFile);
+    }
+    postingCount = postings.getInt(8);
+    int logCount = postings.getInt(12);
+    ByteBuffer header = postings.duplicate();
+    header.position(24);
+    DataInputStream dis = new DataInputStream(new ByteBufferInputStream(header));
+    for (int i = 0; i < logCount; i++) {
+      logFilepaths.add(dis.readUTF());
+      logSizes.add(dis.readLong());
+      logLastModifieds.add(dis.readLong());
+    }
+    postingsOffset = header.position();
+    records = FileChannel.open(recordsFile.toPath(), StandardOpenOption.READ);
+    if (records.size() != postings.getLong(16)) {
+      records.close();
+      throw new IOException("Index does not match the records: " + recordsFile);
+    }
+  }
+
+  public static QueryLogIndex open(String recordsFilepath, String indexFilepath)
+          throws IOException {
+    return new QueryLogIndex(new File(recordsFilepath), new File(indexFilepath));
+  }
+
+  // opens the index, after building it again from the same logs if one of them has changed. An
+  // index of an older version, which did not record its logs, is built again from the given logs
+  public static QueryLogIndex openOrRebuild(String recordsFilepath, String indexFilepath,
+          List<String> defaultLogFilepaths) throws IOException {
+    int version = readVersion(new File(indexFilepath));
+    List<String> logFilepaths;
+    String reason;
+    if (version == VERSION) {
+      QueryLogIndex index = open(recordsFilepath, indexFilepath);
+      if (index.isUpToDate()) {
+        return index;
+      }
+      logFilepaths = index.getLogFilepaths();
+      index.close();
+      reason = "the logs have changed";
+    } else if (version < VERSION) {
+      // version 1 did not record its logs
+      logFilepaths = defaultLogFilepaths;
+      reason = "it is of version " + version;
+    } else {
+      throw new IOException("Unsupported query log index version " + version + ": "
+              + indexFilepath);
+    }
+    for (String logFilepath : logFilepaths) {
+      if (!new File(logFilepath).isFile()) {
+        throw new FileNotFoundException("Indexed query log is missing: " + logFilepath
+                + ", restore it or run QueryLogIndexer on the current logs");
+      }
+    }
+    System.out.println("Rebuilding " + indexFilepath + ", " + reason + ": " + logFilepaths);
+    build(logFilepaths, recordsFilepath, indexFilepath);
+    return open(recordsFilepath, indexFilepath);
+  }
+
+  // the version in the header, or an IOException if the file is not a query log index
+  private static int readVersion(File indexFile) throws IOException {
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(indexFile))) {
+      if (indexFile.length() < 8 || dis.readInt() != MAGIC) {
+        throw new IOException("Not a query log index: " + indexFile);
+      }
+      return dis.readInt();
+    }
+  }
+
+  // whether every log still has the size and modification time it had when it was indexed
+  public boolean isUpToDate() {
+    for (int i = 0; i < logFilepaths.size(); i++) {
+      File logFile = new File(logFilepaths.get(i));
+      if (!logFile.isFile() || logFile.length() != logSizes.get(i)
+              || logFile.lastModified() != logLastModifieds.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public List<String> getLogFilepaths() {
+    return logFilepaths;
+  }
+
+  // scans the gzipped logs once, in the given order
+  public static void build(List<String> logFilepaths, String recordsFilepath,
+          String indexFilepath) throws IOException {
+    QueryLogParser parser = new QueryLogParser(Collections.emptyMap());
+    PostingArrays arrays = new PostingArrays();
+    // taken before the logs are read, so a log written meanwhile is seen as changed
+    List<Long> logSizes = new ArrayList<>();
+    List<Long> logLastModifieds = new ArrayList<>();
+    for (String logFilepath : logFilepaths) {
+      File logFile = new File(logFilepath);
+      logSizes.add(logFile.length());
+      logLastModifieds.add(logFile.lastModified());
+    }
+    long recordsSize = 0;
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(recordsFilepath),
+            BUFFER_SIZE)) {
+      for (String logFilepath : logFilepaths) {
+        try (InputStream is = new GZIPInputStream(new FileInputStream(logFilepath), BUFFER_SIZE)) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          int end = 0;
+          boolean eof = false;
+          while (!eof) {
+            int n = is.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+              eof = true;
+            } else {
+              end += n;
+            }
+            int start = 0;
+            while (start < end) {
+              int lineEnd = QueryLogParser.indexOf(buffer, (byte) '\n', start, end);
+              if (lineEnd < 0) {
+                if (!eof) {
+                  break;
+                }
+                // the last line of the log has no newline
+                lineEnd = end;
+              }
+              recordsSize += writeRecord(buffer, start, lineEnd, parser, os, recordsSize, arrays);
+              start = lineEnd + 1;
+            }
+            if (start >= end) {
+              end = 0;
+            } else {
+              if (start == 0 && end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+              }
+              System.arraycopy(buffer, start, buffer, 0, end - start);
+              end -= start;
+            }
+          }
+        }
+      }
+    }
+    arrays.sort();
+    try (DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(indexFilepath), BUFFER_SIZE))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(arrays.size);
+      dos.writeInt(logFilepaths.size());
+      dos.writeLong(recordsSize);
+      for (int i = 0; i < logFilepaths.size(); i++) {
+        dos.writeUTF(logFilepaths.get(i));
+        dos.writeLong(logSizes.get(i));
+        dos.writeLong(logLastModifieds.get(i));
+      }
+      for (int i = 0; i < arrays.size; i++) {
+        dos.writeLong(arrays.hashes[i]);
+        dos.writeLong(arrays.offsets[i]);
+        dos.writeInt(arrays.times[i]);
+        dos.writeInt(arrays.userIds[i]);
+      }
+    }
+  }
+
+  // writes the record of a log line if its query has at least two words, and returns its length
+  private static int writeRecord(byte[] bytes, int start, int end, QueryLogParser parser,
+          OutputStream os, long offset, PostingArrays arrays) throws IOException {
+    if (end > start && bytes[end - 1] == '\r') {
+      end--;
+    }
+    int tab1 = QueryLogParser.indexOf(bytes, (byte) '\t', start, end);
+    int tab2 = tab1 < 0 ? -1 : QueryLogParser.indexOf(bytes, (byte) '\t', tab1 + 1, end);
+    if (tab2 < 0 || QueryLogParser.indexOf(bytes, (byte) ' ', tab1 + 1, tab2) < 0) {
+      return 0;
+    }
+    int tab3 = QueryLogParser.indexOf(bytes, (byte) '\t', tab2 + 1, end);
+    int timeEnd = tab3 < 0 ? end : tab3;
+    arrays.add(parser.hashKey(bytes, tab1 + 1, tab2), offset,
+            (int) QueryLogParser.parseEpochSecond(bytes, tab2 + 1, timeEnd),
+            parseUserId(bytes, start, tab1));
+    os.write(bytes, start, timeEnd - start);
+    os.write('\n');
+    return timeEnd - start + 1;
+  }
+
+  private static int parseUserId(byte[] bytes, int from, int to) {
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9 || (value = 10 * value + digit) > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return to > from ? (int) value : -1;
+  }
+
+  // the postings of the queries with the given alphabetic key, in log order
+  public List<Posting> find(String key) throws IOException {
+    long hash = QueryLogParser.hashKey(key);
+    int low = 0;
+    int high = postingCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getHash(mid) < hash) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    List<Posting> result = new ArrayList<>();
+    for (int i = low; i < postingCount && getHash(i) == hash; i++) {
+      int position = postingsOffset + i * POSTING_SIZE;
+      Posting posting = new Posting(postings.getLong(position + 8),
+              postings.getInt(position + 16), postings.getInt(position + 20));
+      // drop hash collisions
+      byte[] line = readLine(posting.getOffset());
+      int tab1 = QueryLogParser.indexOf(line, (byte) '\t', 0, line.length);
+      int tab2 = QueryLogParser.indexOf(line, (byte) '\t', tab1 + 1, line.length);
+      if (key.equals(parser.getKey(line, tab1 + 1, tab2))) {
+        result.add(posting);
+      }
+    }
+    return result;
+  }
+
+  private long getHash(int index) {
+    return postings.getLong(postingsOffset + index * POSTING_SIZE);
+  }
+
+  private byte[] readLine(long offset) throws IOException {
+    byte[] bytes = readRecords(offset, 256);
+    while (QueryLogParser.indexOf(bytes, (byte) '\n', 0, bytes.length) < 0
+            && offset + bytes.length < records.size()) {
+      bytes = readRecords(offset, 2 * bytes.length);
+    }
+    int end = QueryLogParser.indexOf(bytes, (byte) '\n', 0, bytes.length);
+    return Arrays.copyOf(bytes, end < 0 ? bytes.length : end);
+  }
+
+  private byte[] readRecords(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, records.size() - offset));
+    while (buffer.hasRemaining()) {
+      if (records.read(buffer, offset + buffer.position()) < 0) {
+        break;
+      }
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  // the record lines from a posting on, while they belong to the user of the posting and are
+  // before the given time, e.g. the time of the posting plus the session timeout; the lines can be
+  // passed to QueryLogSessionizer.sessionize
+  public byte[] readSession(Posting posting, long endTime) throws IOException {
+    byte[] bytes = readRecords(posting.getOffset(), 4096);
+    int start = 0;
+    while (true) {
+      int end = QueryLogParser.indexOf(bytes, (byte) '\n', start, bytes.length);
+      if (end < 0) {
+        if (posting.getOffset() + bytes.length >= records.size()) {
+          return Arrays.copyOf(bytes, start);
+        }
+        bytes = readRecords(posting.getOffset(), 2 * bytes.length);
+        continue;
+      }
+      if (start > 0) {
+        int tab2 = QueryLogParser.indexOf(bytes, (byte) '\t',
+                QueryLogParser.indexOf(bytes, (byte) '\t', start, end) + 1, end);
+        if (!QueryLogSessionizer.sameUser(bytes, 0, start)
+                || QueryLogParser.parseEpochSecond(bytes, tab2 + 1, end) >= endTime) {
+          return Arrays.copyOf(bytes, start);
+        }
+      }
+      start = end + 1;
+    }
+  }
+
+  public int getPostingCount() {
+    return postingCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    records.close();
+  }
+
+  // growable parallel arrays of postings, sorted in place by key hash and offset
+  private static class PostingArrays {
+
+    private int size;
+
+    private long[] hashes = new long[1024];
+
+    private long[] offsets = new long[1024];
+
+    private int[] times = new int[1024];
+
+    private int[] userIds = new int[1024];
+
+    private void add(long hash, long offset, int time, int userId) {
+      if (size == hashes.length) {
+        hashes = Arrays.copyOf(hashes, 2 * size);
+        offsets = Arrays.copyOf(offsets, 2 * size);
+        times = Arrays.copyOf(times, 2 * size);
+        userIds = Arrays.copyOf(userIds, 2 * size);
+      }
+      hashes[size] = hash;
+      offsets[size] = offset;
+      times[size] = time;
+      userIds[size] = userId;
+      size++;
+    }
+
+    private void sort() {
+      sort(0, size - 1);
+    }
+
+    private void sort(int low, int high) {
+      while (high - low > 16) {
+        int mid = (low + high) >>> 1;
+        long pivotHash = hashes[mid];
+        long pivotOffset = offsets[mid];
+        int i = low;
+        int j = high;
+        while (i <= j) {
+          while (compare(i, pivotHash, pivotOffset) < 0) {
+            i++;
+          }
+          while (compare(j, pivotHash, pivotOffset) > 0) {
+            j--;
+          }
+          if (i <= j) {
+            swap(i++, j--);
+          }
+        }
+        // recurse into the smaller half
+        if (j - low < high - i) {
+          sort(low, j);
+          low = i;
+        } else {
+          sort(i, high);
+          high = j;
+        }
+      }
+      for (int i = low + 1; i <= high; i++) {
+        for (int j = i; j > low && compare(j, hashes[j - 1], offsets[j - 1]) < 0; j--) {
+          swap(j, j - 1);
+        }
+      }
+    }
+
+    private int compare(int i, long hash, long offset) {
+      int c = Long.compare(hashes[i], hash);
+      return c != 0 ? c : Long.compare(offsets[i], offset);
+    }
+
+    private void swap(int i, int j) {
+      long hash = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = hash;
+      long offset = offsets[i];
+      offsets[i] = offsets[j];
+      offsets[j] = offset;
+      int time = times[i];
+      times[i] = times[j];
+      times[j] = time;
+      int userId = userIds[i];
+      userIds[i] = userIds[j];
+      userIds[j] = userId;
+    }
+
+  }
+
+}
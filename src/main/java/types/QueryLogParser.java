@@ -0,0 +1,237 @@
+package types;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import com.google.common.hash.Hashing;
+
+// parses AOL query log lines (AnonID, Query, QueryTime, ItemRank, ClickURL separated by tabs) in
+// place from the decompressed bytes: fields are byte ranges, times are decoded into epoch seconds
+// arithmetically, and the alphabetic key of a query is built in a reusable buffer and looked up in a
+// table of byte keys, so only the lines that are kept allocate strings. Queries with non-ascii
+// bytes fall back to the string keys.
+public class QueryLogParser {
+
+  public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter
+          .ofPattern("yyyy-MM-dd kk:mm:ss");
+
+  private static final int[] DAYS_BEFORE_MONTH = { 0, 31, 59, 90, 120, 151, 181, 212, 243, 273,
+      304, 334 };
+
+  private Map<String, String> string2id;
+
+  // looked up when the exact key is unknown, if not null
+  private FuzzyKeyIndex fuzzyIndex;
+
+  // open addressing table of the ascii keys
+  private byte[][] keys;
+
+  private String[] ids;
+
+  private int[] hashes;
+
+  private byte[] key = new byte[256];
+
+  private int keyLength;
+
+  private boolean keyAscii;
+
+  // the keys are alphabetic strings, see toAlphabeticString
+  public QueryLogParser(Map<String, String> string2id) {
+    this(string2id, null);
+  }
+
+  public QueryLogParser(Map<String, String> string2id, FuzzyKeyIndex fuzzyIndex) {
+    this.string2id = string2id;
+    this.fuzzyIndex = fuzzyIndex;
+    int capacity = Integer.highestOneBit(Math.max(2 * string2id.size(), 16) - 1) << 1;
+    this.keys = new byte[capacity][];
+    this.ids = new String[capacity];
+    this.hashes = new int[capacity];
+    for (Map.Entry<String, String> entry : string2id.entrySet()) {
+      String string = entry.getKey();
+      if (!isAscii(string)) {
+        continue;
+      }
+      byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+      int hash = hash(bytes, 0, bytes.length);
+      int slot = hash & (capacity - 1);
+      while (keys[slot] != null && !equals(keys[slot], bytes, 0, bytes.length)) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      keys[slot] = bytes;
+      ids[slot] = entry.getValue();
+      hashes[slot] = hash;
+    }
+  }
+
+  private static boolean isAscii(String string) {
+    for (int i = 0; i < string.length(); i++) {
+      if (string.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes, int from, int to) {
+    int hash = 0;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean equals(byte[] key, byte[] bytes, int from, int to) {
+    if (key.length != to - from) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != bytes[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static int indexOf(byte[] bytes, byte b, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // the task id of a query of at least two words whose alphabetic key is known, or close to a
+  // known key if there is a fuzzy index, otherwise null
+  public String lookup(byte[] bytes, int from, int to) {
+    if (!buildKey(bytes, from, to)) {
+      return null;
+    }
+    if (!keyAscii) {
+      return string2id.get(new String(key, 0, keyLength, StandardCharsets.UTF_8));
+    }
+    int hash = hash(key, 0, keyLength);
+    int mask = keys.length - 1;
+    for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+      if (hashes[slot] == hash && equals(keys[slot], key, 0, keyLength)) {
+        return ids[slot];
+      }
+    }
+    return fuzzyIndex == null ? null : fuzzyIndex.lookup(key, keyLength);
+  }
+
+  // the alphabetic key of a query of at least two words, otherwise null
+  public String getKey(byte[] bytes, int from, int to) {
+    return buildKey(bytes, from, to) ? new String(key, 0, keyLength, StandardCharsets.UTF_8)
+            : null;
+  }
+
+  // a 64 bit hash of the alphabetic key of a query of at least two words, see hashKey(String)
+  public long hashKey(byte[] bytes, int from, int to) {
+    if (!buildKey(bytes, from, to)) {
+      throw new IllegalArgumentException("Query of a single word");
+    }
+    return Hashing.murmur3_128().hashBytes(key, 0, keyLength).asLong();
+  }
+
+  public static long hashKey(String key) {
+    return Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+  }
+
+  // builds the alphabetic key of a query into key[0, keyLength) as utf-8 bytes, or returns false if
+  // the query has a single word
+  private boolean buildKey(byte[] bytes, int from, int to) {
+    boolean space = false;
+    keyLength = 0;
+    keyAscii = true;
+    for (int i = from; i < to; i++) {
+      byte b = bytes[i];
+      if (b < 0) {
+        String query = new String(bytes, from, to - from, StandardCharsets.UTF_8).toLowerCase();
+        if (!query.contains(" ")) {
+          return false;
+        }
+        byte[] stringKey = toAlphabeticString(query).getBytes(StandardCharsets.UTF_8);
+        keyLength = 0;
+        for (byte k : stringKey) {
+          appendKey(k);
+          keyAscii &= k >= 0;
+        }
+        return true;
+      }
+      if (b == ' ') {
+        space = true;
+      } else if (b >= 'a' && b <= 'z' || b >= '0' && b <= '9') {
+        appendKey(b);
+      } else if (b >= 'A' && b <= 'Z') {
+        appendKey((byte) (b + 'a' - 'A'));
+      }
+    }
+    return space;
+  }
+
+  private void appendKey(byte b) {
+    if (keyLength == key.length) {
+      byte[] newKey = new byte[2 * key.length];
+      System.arraycopy(key, 0, newKey, 0, keyLength);
+      key = newKey;
+    }
+    key[keyLength++] = b;
+  }
+
+  public static String toAlphabeticString(String string) {
+    return string.chars().filter(i -> Character.isLetterOrDigit(i))
+            .map(i -> Character.toLowerCase(i))
+            .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+            .toString();
+  }
+
+  // seconds since 1970-01-01 00:00:00 of a "yyyy-MM-dd kk:mm:ss" time, resolved the way
+  // LocalDateTime.parse(time, TIME_FORMAT) does: hour 24 is midnight of the same day, and a day past
+  // the end of the month is the last day of the month
+  public static long parseEpochSecond(byte[] bytes, int from, int to) {
+    if (to - from == 19 && bytes[from + 4] == '-' && bytes[from + 7] == '-'
+            && bytes[from + 10] == ' ' && bytes[from + 13] == ':' && bytes[from + 16] == ':') {
+      int year = digits(bytes, from, 4);
+      int month = digits(bytes, from + 5, 2);
+      int day = digits(bytes, from + 8, 2);
+      int hour = digits(bytes, from + 11, 2);
+      int minute = digits(bytes, from + 14, 2);
+      int second = digits(bytes, from + 17, 2);
+      if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour >= 0
+              && hour <= 24 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+        boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        int monthLength = month == 12 ? 31
+                : DAYS_BEFORE_MONTH[month] - DAYS_BEFORE_MONTH[month - 1];
+        if (month == 2 && leap) {
+          monthLength++;
+        }
+        day = Math.min(day, monthLength);
+        long y = year - 1;
+        long days = 365 * y + y / 4 - y / 100 + y / 400 + DAYS_BEFORE_MONTH[month - 1]
+                + (leap && month > 2 ? 1 : 0) + day - 1 - 719162;
+        return 86400 * days + 3600 * (hour % 24) + 60 * minute + second;
+      }
+    }
+    return LocalDateTime.parse(new String(bytes, from, to - from, StandardCharsets.UTF_8),
+            TIME_FORMAT).toEpochSecond(ZoneOffset.UTC);
+  }
+
+  private static int digits(byte[] bytes, int from, int length) {
+    int value = 0;
+    for (int i = from; i < from + length; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = 10 * value + digit;
+    }
+    return value;
+  }
+
+}
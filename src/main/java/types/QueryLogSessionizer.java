@@ -0,0 +1,137 @@
+package types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// streams the sessions of a byte range of an AOL query log (sorted by user id) to listeners: a
+// session starts with a query that matches a task, and collects the following queries of the same
+// user until the timeout; queries of a single word are skipped. Lines are sliced in place, only the
+// queries passed to the listeners become strings.
+public class QueryLogSessionizer {
+
+  public interface SessionListener {
+
+    void startSession(String userId, String taskId, String query, long time);
+
+    void addQuery(String query, long time);
+
+    default void endSession() {
+    }
+
+    static SessionListener of(List<SessionListener> listeners) {
+      return new SessionListener() {
+
+        @Override
+        public void startSession(String userId, String taskId, String query, long time) {
+          listeners.forEach(listener -> listener.startSession(userId, taskId, query, time));
+        }
+
+        @Override
+        public void addQuery(String query, long time) {
+          listeners.forEach(listener -> listener.addQuery(query, time));
+        }
+
+        @Override
+        public void endSession() {
+          listeners.forEach(SessionListener::endSession);
+        }
+
+      };
+    }
+
+    static SessionListener of(SessionListener... listeners) {
+      return of(Arrays.asList(listeners));
+    }
+
+  }
+
+  public enum Boundary {
+    // the session ends timeout seconds after the task query
+    TASK_QUERY,
+    // the session ends timeout seconds after its last query
+    LAST_QUERY
+  }
+
+  private QueryLogParser parser;
+
+  private long timeout;
+
+  private Boundary boundary;
+
+  public QueryLogSessionizer(QueryLogParser parser, long timeout, Boundary boundary) {
+    this.parser = parser;
+    this.timeout = timeout;
+    this.boundary = boundary;
+  }
+
+  // bytes [from, to) must start at a line, and hold all the lines of the users they contain
+  public void sessionize(byte[] bytes, int from, int to, SessionListener listener) {
+    long sessionTimeout = Long.MIN_VALUE;
+    int userStart = -1;
+    for (int start = from, end; start < to; start = end + 1) {
+      end = QueryLogParser.indexOf(bytes, (byte) '\n', start, to);
+      if (end < 0) {
+        end = to;
+      }
+      int lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+      int tab1 = QueryLogParser.indexOf(bytes, (byte) '\t', start, lineEnd);
+      int tab2 = tab1 < 0 ? -1 : QueryLogParser.indexOf(bytes, (byte) '\t', tab1 + 1, lineEnd);
+      if (tab2 < 0) {
+        // no query or no time
+        continue;
+      }
+      int tab3 = QueryLogParser.indexOf(bytes, (byte) '\t', tab2 + 1, lineEnd);
+      int timeEnd = tab3 < 0 ? lineEnd : tab3;
+      if (QueryLogParser.indexOf(bytes, (byte) ' ', tab1 + 1, tab2) < 0) {
+        continue;
+      }
+      String taskId = parser.lookup(bytes, tab1 + 1, tab2);
+      if (taskId != null) {
+        if (userStart >= 0) {
+          listener.endSession();
+        }
+        long time = QueryLogParser.parseEpochSecond(bytes, tab2 + 1, timeEnd);
+        sessionTimeout = time + timeout;
+        userStart = start;
+        listener.startSession(new String(bytes, start, tab1 - start, StandardCharsets.UTF_8),
+                taskId, new String(bytes, tab1 + 1, tab2 - tab1 - 1, StandardCharsets.UTF_8),
+                time);
+        continue;
+      }
+      if (userStart >= 0 && sameUser(bytes, userStart, start)) {
+        long time = QueryLogParser.parseEpochSecond(bytes, tab2 + 1, timeEnd);
+        if (time < sessionTimeout) {
+          if (boundary == Boundary.LAST_QUERY) {
+            sessionTimeout = time + timeout;
+          }
+          listener.addQuery(new String(bytes, tab1 + 1, tab2 - tab1 - 1, StandardCharsets.UTF_8),
+                  time);
+          continue;
+        }
+      }
+      if (userStart >= 0) {
+        listener.endSession();
+        userStart = -1;
+      }
+    }
+    if (userStart >= 0) {
+      listener.endSession();
+    }
+  }
+
+  // whether the lines starting at start1 and start2 have the same user id
+  public static boolean sameUser(byte[] bytes, int start1, int start2) {
+    for (int i = 0;; i++) {
+      byte b1 = bytes[start1 + i];
+      byte b2 = bytes[start2 + i];
+      if (b1 != b2) {
+        return false;
+      }
+      if (b1 == '\t' || b1 == '\n') {
+        return true;
+      }
+    }
+  }
+
+}
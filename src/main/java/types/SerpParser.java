@@ -0,0 +1,82 @@
+package types;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import types.SerpRecord.Result;
+
+// finds the query, the suggested queries and the results of a search result page in one pass of
+// the html tokenizer; a parser is used for one page
+public abstract class SerpParser implements HtmlTokenizer.Handler {
+
+  protected String query;
+
+  protected Set<String> suggestedQueries = Sets.newHashSet();
+
+  protected List<Result> results = new ArrayList<>();
+
+  // the text of the element being captured, or null
+  private StringBuilder capture;
+
+  public SerpParser parse(Reader reader) throws IOException {
+    new HtmlTokenizer(reader).tokenize(this);
+    return this;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public Set<String> getSuggestedQueries() {
+    return suggestedQueries;
+  }
+
+  public List<Result> getResults() {
+    return results;
+  }
+
+  // the text of the nested elements is captured as well, i.e. with their tags removed
+  protected void startCapture() {
+    capture = new StringBuilder();
+  }
+
+  // tabs and line breaks, e.g. of an element that spans lines, become spaces as when the page is
+  // rendered, since they separate the fields and the records of the record files
+  protected String endCapture() {
+    for (int i = 0; i < capture.length(); i++) {
+      char c = capture.charAt(i);
+      if (c == '\t' || c == '\n' || c == '\r') {
+        capture.setCharAt(i, ' ');
+      }
+    }
+    String captured = capture.toString();
+    capture = null;
+    return captured;
+  }
+
+  protected boolean isCapturing() {
+    return capture != null;
+  }
+
+  @Override
+  public void text(String text) {
+    if (capture != null) {
+      capture.append(text);
+    }
+  }
+
+  @Override
+  public void startTag(String name, Map<String, String> attributes) {
+  }
+
+  @Override
+  public void endTag(String name) {
+  }
+
+}
@@ -0,0 +1,130 @@
+package types;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+// what a search result page yields, parsed once: the query, the suggested queries and the ranked
+// result urls. A record is a tsv line: the id, the query, the number of suggested queries and the
+// suggested queries, then the number of results and the rank, filtered flag (0 or 1) and url of
+// each result.
+public class SerpRecord {
+
+  public static class Result {
+
+    private int rank;
+
+    private String url;
+
+    private boolean filtered;
+
+    public Result(int rank, String url, boolean filtered) {
+      this.rank = rank;
+      this.url = url;
+      this.filtered = filtered;
+    }
+
+    // 1 for the first result, filtered results included
+    public int getRank() {
+      return rank;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    // e.g. a wikihow or google page, which is not downloaded as context
+    public boolean isFiltered() {
+      return filtered;
+    }
+
+  }
+
+  private String id;
+
+  private String query;
+
+  private List<String> suggestedQueries;
+
+  private List<Result> results;
+
+  public SerpRecord(String id, String query, List<String> suggestedQueries,
+          List<Result> results) {
+    this.id = id;
+    this.query = query;
+    this.suggestedQueries = suggestedQueries;
+    this.results = results;
+  }
+
+  public SerpRecord(String id, SerpParser parser) {
+    this(id, parser.getQuery(), new ArrayList<>(parser.getSuggestedQueries()),
+            parser.getResults());
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public List<String> getSuggestedQueries() {
+    return suggestedQueries;
+  }
+
+  public List<Result> getResults() {
+    return results;
+  }
+
+  // the line of the suggested query files, e.g. data/google-suggested-query.tsv
+  public String toSuggestedQueryLine() {
+    return id + "\t" + query + "\t" + String.join("\t", suggestedQueries) + "\n";
+  }
+
+  public String toLine() {
+    StringBuilder line = new StringBuilder();
+    line.append(id).append('\t').append(query).append('\t').append(suggestedQueries.size());
+    for (String suggestedQuery : suggestedQueries) {
+      line.append('\t').append(suggestedQuery);
+    }
+    line.append('\t').append(results.size());
+    for (Result result : results) {
+      line.append('\t').append(result.rank).append('\t').append(result.filtered ? 1 : 0)
+              .append('\t').append(result.url);
+    }
+    return line.append('\n').toString();
+  }
+
+  public static SerpRecord parse(String line) {
+    String[] segs = line.split("\t", -1);
+    int suggestedCount = Integer.parseInt(segs[2]);
+    List<String> suggestedQueries = Arrays.asList(segs).subList(3, 3 + suggestedCount);
+    int resultStart = 4 + suggestedCount;
+    int resultCount = Integer.parseInt(segs[resultStart - 1]);
+    List<Result> results = new ArrayList<>(resultCount);
+    for (int i = 0; i < resultCount; i++) {
+      int seg = resultStart + 3 * i;
+      results.add(new Result(Integer.parseInt(segs[seg]), segs[seg + 2],
+              segs[seg + 1].equals("1")));
+    }
+    return new SerpRecord(segs[0], segs[1].equals("null") ? null : segs[1],
+            new ArrayList<>(suggestedQueries), results);
+  }
+
+  // the records of a file by id, in file order
+  public static Map<String, SerpRecord> load(File file) throws IOException {
+    Map<String, SerpRecord> id2record = new LinkedHashMap<>();
+    Files.newReader(file, Charsets.UTF_8).lines().map(SerpRecord::parse)
+            .forEach(record -> id2record.put(record.getId(), record));
+    return id2record;
+  }
+
+}
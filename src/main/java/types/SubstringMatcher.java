@@ -0,0 +1,161 @@
+package types;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// finds which of a set of patterns occur in a text in a single pass over the text, Aho-Corasick
+// style: the patterns form a trie whose states also link to the longest proper suffix that is a
+// state too, so a mismatch falls back along these links instead of restarting. An empty pattern
+// occurs in every text.
+public class SubstringMatcher {
+
+  private int patternCount;
+
+  // open addressing table from a state and a char to the next state of the trie
+  private long[] tableEdges;
+
+  private int[] tableStates;
+
+  private int[] fails;
+
+  // the closest state along the fail links that ends a pattern, or -1
+  private int[] outputs;
+
+  // the patterns that end at a state, as linked lists
+  private int[] patternHeads;
+
+  private int[] patternNexts;
+
+  private int stateCount = 1;
+
+  public SubstringMatcher(List<String> patterns) {
+    patternCount = patterns.size();
+    int maxStates = 1;
+    for (String pattern : patterns) {
+      maxStates += pattern.length();
+    }
+    int capacity = Integer.highestOneBit(Math.max(2 * maxStates, 16) - 1) << 1;
+    tableEdges = new long[capacity];
+    tableStates = new int[capacity];
+    Arrays.fill(tableStates, -1);
+    patternHeads = new int[maxStates];
+    Arrays.fill(patternHeads, -1);
+    patternNexts = new int[patternCount];
+    // the trie edge into each state
+    int[] parents = new int[maxStates];
+    char[] chars = new char[maxStates];
+    int[] depths = new int[maxStates];
+    for (int i = 0; i < patternCount; i++) {
+      String pattern = patterns.get(i);
+      int state = 0;
+      for (int j = 0; j < pattern.length(); j++) {
+        int next = next(state, pattern.charAt(j));
+        if (next < 0) {
+          next = stateCount++;
+          put(state, pattern.charAt(j), next);
+          parents[next] = state;
+          chars[next] = pattern.charAt(j);
+          depths[next] = j + 1;
+        }
+        state = next;
+      }
+      patternNexts[i] = patternHeads[state];
+      patternHeads[state] = i;
+    }
+    link(parents, chars, depths);
+  }
+
+  // the fail and output links, in breadth first order, since a state only links to a shallower one
+  private void link(int[] parents, char[] chars, int[] depths) {
+    fails = new int[stateCount];
+    outputs = new int[stateCount];
+    outputs[0] = -1;
+    int maxDepth = 0;
+    for (int state = 1; state < stateCount; state++) {
+      maxDepth = Math.max(maxDepth, depths[state]);
+    }
+    int[] starts = new int[maxDepth + 2];
+    for (int state = 1; state < stateCount; state++) {
+      starts[depths[state] + 1]++;
+    }
+    for (int depth = 1; depth <= maxDepth + 1; depth++) {
+      starts[depth] += starts[depth - 1];
+    }
+    int[] order = new int[stateCount - 1];
+    for (int state = 1; state < stateCount; state++) {
+      order[starts[depths[state]]++] = state;
+    }
+    for (int state : order) {
+      int fail = 0;
+      if (parents[state] != 0) {
+        fail = fails[parents[state]];
+        int next = next(fail, chars[state]);
+        while (next < 0 && fail != 0) {
+          fail = fails[fail];
+          next = next(fail, chars[state]);
+        }
+        fail = next >= 0 ? next : 0;
+      }
+      fails[state] = fail;
+      outputs[state] = patternHeads[fail] >= 0 && fail != 0 ? fail : outputs[fail];
+    }
+  }
+
+  private static int slot(int state, char c, int mask) {
+    long hash = (long) state << 16 | c;
+    hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+    return (int) (hash ^ hash >>> 33) & mask;
+  }
+
+  private int next(int state, char c) {
+    long edge = (long) state << 16 | c;
+    int mask = tableEdges.length - 1;
+    int slot = slot(state, c, mask);
+    while (tableStates[slot] >= 0) {
+      if (tableEdges[slot] == edge) {
+        return tableStates[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void put(int state, char c, int next) {
+    int mask = tableEdges.length - 1;
+    int slot = slot(state, c, mask);
+    while (tableStates[slot] >= 0) {
+      slot = (slot + 1) & mask;
+    }
+    tableEdges[slot] = (long) state << 16 | c;
+    tableStates[slot] = next;
+  }
+
+  // the indices of the patterns that occur in the text
+  public BitSet match(String text) {
+    BitSet matched = new BitSet(patternCount);
+    report(0, matched);
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int next = next(state, c);
+      while (next < 0 && state != 0) {
+        state = fails[state];
+        next = next(state, c);
+      }
+      state = next >= 0 ? next : 0;
+      for (int output = state; output > 0; output = outputs[output]) {
+        report(output, matched);
+      }
+    }
+    return matched;
+  }
+
+  private void report(int state, BitSet matched) {
+    for (int pattern = patternHeads[state]; pattern >= 0; pattern = patternNexts[pattern]) {
+      matched.set(pattern);
+    }
+  }
+
+}
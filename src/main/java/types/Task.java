@@ -5,7 +5,7 @@ import java.util.List;
 
 import com.google.common.base.Strings;
 
-public class Task {
+public class Task implements TaskNode {
 
   private String id;
 
@@ -37,34 +37,33 @@ public class Task {
 
   @Override
   public String toString() {
-    StringBuffer sb = new StringBuffer();
-    sb.append("# " + summary + " /" + id + "/\n");
-    sb.append(explanation + "\n");
-    subtasks.stream().flatMap(task -> task.getTaskLines(0).stream())
-            .map(line -> line/* .replaceAll("[<>]", "") */ + "\n").forEach(sb::append);
-    return sb.toString();
+    return TaskWriter.toMarkdown(this);
   }
 
   public List<String> getTaskLines(int depth) {
     List<String> taskStringList = new ArrayList<>();
-    taskStringList.add(Strings.repeat("  ", depth) + "* " + explanation);
-    subtasks.stream().map(task -> task.getTaskLines(depth + 1)).flatMap(List::stream)
+    taskStringList.add(Strings.repeat("  ", depth) + "* " + getExplanation());
+    getSubtasks().stream().map(task -> task.getTaskLines(depth + 1)).flatMap(List::stream)
             .forEachOrdered(taskStringList::add);
     return taskStringList;
   }
 
+  @Override
   public String getSummary() {
     return summary;
   }
 
+  @Override
   public String getId() {
     return id;
   }
 
+  @Override
   public String getExplanation() {
     return explanation;
   }
 
+  @Override
   public List<Task> getSubtasks() {
     return subtasks;
   }
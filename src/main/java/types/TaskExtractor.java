@@ -3,71 +3,47 @@ package types;
 import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.OptionalInt;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.common.base.Strings;
 
-public class TaskExtractor {
+import types.WikihowSectionIndex.Section;
 
-  private List<Task> tasks;
+public class TaskExtractor {
 
-  public TaskExtractor() {
-    this.tasks = new ArrayList<>();
-  }
-
-  public void addWikidumpArticles(List<WikidumpArticle> articles) {
-    System.out.println("Loaded " + articles.size() + " articles");
-    articles.stream().map(TaskExtractor::createTask).filter(Objects::nonNull)
-            .forEachOrdered(tasks::add);
-    System.out.println("Added " + tasks.size() + " tasks");
-  }
+  public static final int DEFAULT_BATCH_SIZE = 1024;
 
   private static Pattern stubMarkers = Pattern.compile("\\{\\{stub\\|.+?\\}\\}",
           Pattern.CASE_INSENSITIVE);
 
-  private static Pattern headerPattern = Pattern.compile("== *.+ *==");
-
-  private static Pattern stepsPattern = Pattern.compile("== *steps *==", Pattern.CASE_INSENSITIVE);
-
   public static Task createTask(WikidumpArticle article) {
-    // extract lines
-    String text = article.getText();
-    List<String> lines = Arrays.stream(text.split("\n")).map(String::trim)
-            .filter(line -> !line.isEmpty()).collect(toList());
+    WikihowSectionIndex index = new WikihowSectionIndex(article.getText());
     // extract description lines
-    OptionalInt firstHeaderLineNoOptional = IntStream.range(0, lines.size())
-            .filter(i -> headerPattern.matcher(lines.get(i)).matches()).findFirst();
-    int firstHeaderLineNo = firstHeaderLineNoOptional.isPresent()
-            ? firstHeaderLineNoOptional.getAsInt() : lines.size();
-    List<String> intros = IntStream.range(0, firstHeaderLineNo).mapToObj(lines::get)
-            .map(String::trim).collect(toList());
+    List<CharSequence> intros = index.getLineSequences(Section.INTRO);
     boolean containsStub = intros.stream().anyMatch(line -> stubMarkers.matcher(line).find());
     if (containsStub) {
       return null;
     }
-    String explanation = Collections.max(intros, Comparator.comparing(String::length));
+    String explanation = Collections.max(intros, Comparator.comparing(CharSequence::length))
+            .toString();
     if (Strings.isNullOrEmpty(explanation)) {
       return null;
     }
     // extract step lines
-    OptionalInt stepsStartLineNoOptional = IntStream.range(firstHeaderLineNo, lines.size())
-            .filter(i -> stepsPattern.matcher(lines.get(i)).matches()).findFirst();
-    int stepsStartLineNo = stepsStartLineNoOptional.isPresent()
-            ? stepsStartLineNoOptional.getAsInt() : lines.size();
-    OptionalInt stepsEndLineNoOptional = IntStream.range(stepsStartLineNo + 1, lines.size())
-            .filter(i -> headerPattern.matcher(lines.get(i)).matches()).findFirst();
-    int stepsEndLineNo = stepsEndLineNoOptional.isPresent() ? stepsEndLineNoOptional.getAsInt()
-            : lines.size();
-    List<String> taskLines = IntStream.range(stepsStartLineNo + 1, stepsEndLineNo)
-            .mapToObj(lines::get).filter(line -> line.startsWith("#"))
-            .map(line -> line.substring(1)).map(String::trim).collect(toList());
+    List<String> taskLines = index.getLineSequences(Section.STEPS).stream()
+            .filter(line -> line.charAt(0) == '#')
+            .map(line -> line.subSequence(1, line.length()).toString().trim()).collect(toList());
     if (taskLines.isEmpty()) {
       return null;
     }
@@ -75,10 +51,46 @@ public class TaskExtractor {
             taskLines.stream().map(Task::new).collect(toList()));
   }
 
-  public void normalizeTasks() {
-    tasks = tasks.stream().map(TaskExtractor::normalizeTask).filter(Objects::nonNull)
-            .collect(toList());
-    System.out.println("Normalized " + tasks.size() + " tasks");
+  // runs createTask, normalizeTask, buildHierarchy and fillFactorIds on a single article
+  public static Task extractTask(WikidumpArticle article) {
+    Task task = createTask(article);
+    if (task == null) {
+      return null;
+    }
+    task = normalizeTask(task);
+    if (task == null) {
+      return null;
+    }
+    task = buildHierarchy(task);
+    fillFactorIds(task);
+    return task;
+  }
+
+  // maps the articles in parallel within each batch, so at most one batch of articles and results
+  // is held at a time; the order of the articles is kept
+  public static <T> Stream<T> mapInBatches(Stream<WikidumpArticle> articles,
+          Function<WikidumpArticle, T> mapper, int batchSize) {
+    Iterator<WikidumpArticle> iterator = articles.iterator();
+    Iterator<List<T>> batches = new Iterator<List<T>>() {
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public List<T> next() {
+        List<WikidumpArticle> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext()) {
+          batch.add(iterator.next());
+        }
+        return batch.parallelStream().map(mapper).collect(toList());
+      }
+
+    };
+    return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+            .flatMap(List::stream).onClose(articles::close);
   }
 
   private static Task normalizeTask(Task noisyTask) {
@@ -92,11 +104,6 @@ public class TaskExtractor {
             normalizedSubtasks);
   }
 
-  public void buildHierarchy() {
-    tasks = tasks.stream().map(TaskExtractor::buildHierarchy).collect(toList());
-    System.out.println("Created " + tasks.size() + " hierarchical tasks");
-  }
-
   private static Task buildHierarchy(Task flatTask) {
     List<Task> hierarchicalSubtasks = new ArrayList<>();
     Task curHierarchicalTask = null;
@@ -119,10 +126,6 @@ public class TaskExtractor {
             multiHierarchicalSubtasks);
   }
 
-  public void fillTaskIds() {
-    tasks.stream().forEachOrdered(TaskExtractor::fillFactorIds);
-  }
-
   private static void fillFactorIds(Task task) {
     List<Task> subtasks = task.getSubtasks();
     IntStream.range(0, subtasks.size())
@@ -182,6 +185,10 @@ public class TaskExtractor {
   private static Pattern quotesMarkers = Pattern.compile("'''?");
 
   public static String normalizeExplanation(String noisyExplanation) {
+    return WikitextNormalizer.normalize(noisyExplanation);
+  }
+
+  public static String normalizeExplanationByPatterns(String noisyExplanation) {
     String normalizedExplanation = new String(noisyExplanation);
     normalizedExplanation = htmlMarkers.matcher(normalizedExplanation).replaceAll("");
     normalizedExplanation = mediaMarkers.matcher(normalizedExplanation).replaceAll("");
@@ -204,8 +211,4 @@ public class TaskExtractor {
     return normalizedExplanation.trim();
   }
 
-  public List<Task> getTasks() {
-    return tasks;
-  }
-
 }
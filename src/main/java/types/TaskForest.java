@@ -0,0 +1,328 @@
+package types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// task trees stored column-wise: a node is an index into parallel int arrays, nodes are appended in
+// preorder, and every distinct string is kept once as utf-8 bytes in a shared pool. Subtask ids are
+// not stored when they follow the "<parent id>.<position>" scheme of TaskExtractor, they are derived
+// from the path.
+public class TaskForest {
+
+  private static final int NULL = -1;
+
+  private static final int DERIVED = -2;
+
+  private int size;
+
+  private int[] parents;
+
+  private int[] firstChildren;
+
+  private int[] lastChildren;
+
+  private int[] nextSiblings;
+
+  // 1-based position among the siblings
+  private int[] positions;
+
+  private int[] ids;
+
+  private int[] summaries;
+
+  private int[] explanations;
+
+  private int rootCount;
+
+  private int[] roots;
+
+  // string i of the pool spans poolBytes[poolOffsets[i], poolOffsets[i + 1])
+  private int poolSize;
+
+  private byte[] poolBytes;
+
+  private int[] poolOffsets;
+
+  private int[] poolHashes;
+
+  // open addressing table of pool indexes plus one, dropped by trimToSize and rebuilt if more nodes
+  // are added
+  private int[] poolTable;
+
+  public TaskForest() {
+    int capacity = 1024;
+    this.parents = new int[capacity];
+    this.firstChildren = new int[capacity];
+    this.lastChildren = new int[capacity];
+    this.nextSiblings = new int[capacity];
+    this.positions = new int[capacity];
+    this.ids = new int[capacity];
+    this.summaries = new int[capacity];
+    this.explanations = new int[capacity];
+    this.roots = new int[capacity];
+    this.poolSize = 0;
+    this.poolBytes = new byte[64 * capacity];
+    this.poolOffsets = new int[capacity + 1];
+    this.poolHashes = new int[capacity];
+    this.poolTable = new int[2 * capacity];
+  }
+
+  // copies the task tree into the forest, and returns the index of its root node
+  public int add(TaskNode task) {
+    return add(task, NULL);
+  }
+
+  private int add(TaskNode task, int parent) {
+    int node = addNode(parent, task.getSummary(), task.getId(), task.getExplanation());
+    for (TaskNode subtask : task.getSubtasks()) {
+      add(subtask, node);
+    }
+    return node;
+  }
+
+  // appends a node as the last child of parent, or as a new root if parent is negative
+  public int addNode(int parent, String summary, String id, String explanation) {
+    ensureCapacity(size + 1);
+    int node = size++;
+    parents[node] = parent;
+    firstChildren[node] = NULL;
+    lastChildren[node] = NULL;
+    nextSiblings[node] = NULL;
+    if (parent < 0) {
+      if (rootCount == roots.length) {
+        roots = Arrays.copyOf(roots, Math.max(16, rootCount * 2));
+      }
+      roots[rootCount++] = node;
+      positions[node] = rootCount;
+      ids[node] = intern(id);
+    } else {
+      if (lastChildren[parent] < 0) {
+        firstChildren[parent] = node;
+        positions[node] = 1;
+      } else {
+        nextSiblings[lastChildren[parent]] = node;
+        positions[node] = positions[lastChildren[parent]] + 1;
+      }
+      lastChildren[parent] = node;
+      String parentId = getId(parent);
+      ids[node] = id != null && parentId != null && id.equals(parentId + "." + positions[node])
+              ? DERIVED : intern(id);
+    }
+    summaries[node] = intern(summary);
+    explanations[node] = intern(explanation);
+    return node;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= parents.length) {
+      return;
+    }
+    int newCapacity = Math.max(Math.max(capacity, 1024), parents.length * 2);
+    parents = Arrays.copyOf(parents, newCapacity);
+    firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+    lastChildren = Arrays.copyOf(lastChildren, newCapacity);
+    nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+    positions = Arrays.copyOf(positions, newCapacity);
+    ids = Arrays.copyOf(ids, newCapacity);
+    summaries = Arrays.copyOf(summaries, newCapacity);
+    explanations = Arrays.copyOf(explanations, newCapacity);
+  }
+
+  private int intern(String string) {
+    if (string == null) {
+      return NULL;
+    }
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    int hash = string.hashCode();
+    if (poolTable == null || 2 * (poolSize + 1) > poolTable.length) {
+      rehash(Math.max(2 * (poolSize + 1), poolTable == null ? 0 : 2 * poolTable.length));
+    }
+    int mask = poolTable.length - 1;
+    int slot = hash & mask;
+    for (; poolTable[slot] != 0; slot = (slot + 1) & mask) {
+      int index = poolTable[slot] - 1;
+      if (poolHashes[index] == hash && poolEquals(index, bytes)) {
+        return index;
+      }
+    }
+    if (poolSize == poolHashes.length) {
+      poolHashes = Arrays.copyOf(poolHashes, Math.max(16, 2 * poolHashes.length));
+      poolOffsets = Arrays.copyOf(poolOffsets, poolHashes.length + 1);
+    }
+    int offset = poolOffsets[poolSize];
+    if (offset + bytes.length > poolBytes.length) {
+      poolBytes = Arrays.copyOf(poolBytes,
+              Math.max(offset + bytes.length, (int) Math.min(Integer.MAX_VALUE - 8,
+                      2L * poolBytes.length)));
+    }
+    System.arraycopy(bytes, 0, poolBytes, offset, bytes.length);
+    poolOffsets[poolSize + 1] = offset + bytes.length;
+    poolHashes[poolSize] = hash;
+    poolTable[slot] = poolSize + 1;
+    return poolSize++;
+  }
+
+  private void rehash(int minCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(minCapacity, 16) - 1) << 1;
+    poolTable = new int[capacity];
+    int mask = capacity - 1;
+    for (int index = 0; index < poolSize; index++) {
+      int slot = poolHashes[index] & mask;
+      while (poolTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      poolTable[slot] = index + 1;
+    }
+  }
+
+  private boolean poolEquals(int index, byte[] bytes) {
+    int offset = poolOffsets[index];
+    if (poolOffsets[index + 1] - offset != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (poolBytes[offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String lookup(int index) {
+    if (index < 0) {
+      return null;
+    }
+    int offset = poolOffsets[index];
+    return new String(poolBytes, offset, poolOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+  }
+
+  // releases the spare capacity and the lookup table of the pool once all nodes are added
+  public void trimToSize() {
+    parents = Arrays.copyOf(parents, size);
+    firstChildren = Arrays.copyOf(firstChildren, size);
+    lastChildren = Arrays.copyOf(lastChildren, size);
+    nextSiblings = Arrays.copyOf(nextSiblings, size);
+    positions = Arrays.copyOf(positions, size);
+    ids = Arrays.copyOf(ids, size);
+    summaries = Arrays.copyOf(summaries, size);
+    explanations = Arrays.copyOf(explanations, size);
+    roots = Arrays.copyOf(roots, rootCount);
+    poolBytes = Arrays.copyOf(poolBytes, poolOffsets[poolSize]);
+    poolOffsets = Arrays.copyOf(poolOffsets, poolSize + 1);
+    poolHashes = Arrays.copyOf(poolHashes, poolSize);
+    poolTable = null;
+  }
+
+  public int size() {
+    return rootCount;
+  }
+
+  public int getNodeCount() {
+    return size;
+  }
+
+  public int getRoot(int index) {
+    return roots[index];
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  public String getId(int node) {
+    if (ids[node] != DERIVED) {
+      return lookup(ids[node]);
+    }
+    return getId(parents[node]) + "." + positions[node];
+  }
+
+  public String getSummary(int node) {
+    return lookup(summaries[node]);
+  }
+
+  public String getExplanation(int node) {
+    return lookup(explanations[node]);
+  }
+
+  public TaskNode getTask(int node) {
+    return new TaskView(node);
+  }
+
+  // read-only views of the trees, in the order they were added
+  public List<TaskNode> getTasks() {
+    return new AbstractList<TaskNode>() {
+
+      @Override
+      public TaskNode get(int index) {
+        if (index < 0 || index >= rootCount) {
+          throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return getTask(roots[index]);
+      }
+
+      @Override
+      public int size() {
+        return rootCount;
+      }
+
+    };
+  }
+
+  private class TaskView implements TaskNode {
+
+    private int node;
+
+    // built on the first call, and shared by later ones
+    private List<TaskNode> subtasks;
+
+    private TaskView(int node) {
+      this.node = node;
+    }
+
+    @Override
+    public String getSummary() {
+      return TaskForest.this.getSummary(node);
+    }
+
+    @Override
+    public String getId() {
+      return TaskForest.this.getId(node);
+    }
+
+    @Override
+    public String getExplanation() {
+      return TaskForest.this.getExplanation(node);
+    }
+
+    @Override
+    public List<TaskNode> getSubtasks() {
+      if (subtasks == null) {
+        List<TaskNode> children = new ArrayList<>();
+        for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+          children.add(new TaskView(child));
+        }
+        subtasks = Collections.unmodifiableList(children);
+      }
+      return subtasks;
+    }
+
+    @Override
+    public String toString() {
+      return TaskWriter.toMarkdown(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,16 @@
+package types;
+
+import java.util.List;
+
+// the read-only side of a task tree, shared by Task and the views of a TaskForest
+public interface TaskNode {
+
+  String getSummary();
+
+  String getId();
+
+  String getExplanation();
+
+  List<? extends TaskNode> getSubtasks();
+
+}
@@ -0,0 +1,391 @@
+package types;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+public class TaskSnapshot {
+
+  private static final int MAGIC = 0x504b4254;
+
+  private static final int VERSION = 2;
+
+  private String dumpChecksum;
+
+  private long dumpSize;
+
+  private long dumpLastModified;
+
+  private MappedByteBuffer buffer;
+
+  // record offsets sorted by task id
+  private long[] offsets;
+
+  // every page seen in the dump, sorted by page id, with the hash of its text
+  private int[] pageIds;
+
+  private long[] pageHashes;
+
+  // pages that existed in an earlier dump, sorted
+  private int[] tombstones;
+
+  private TaskSnapshot(File snapshotFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot larger than 2GB is not supported: " + snapshotFile);
+      }
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a task snapshot: " + snapshotFile);
+    }
+    ByteBuffer header = buffer.duplicate();
+    header.position(8);
+    dumpChecksum = readString(header);
+    dumpSize = header.getLong();
+    dumpLastModified = header.getLong();
+    int taskCount = header.getInt();
+    int pageCount = header.getInt();
+    int tombstoneCount = header.getInt();
+    ByteBuffer index = buffer.duplicate();
+    index.position((int) buffer.getLong(buffer.limit() - Long.BYTES));
+    offsets = new long[taskCount];
+    for (int i = 0; i < taskCount; i++) {
+      offsets[i] = index.getLong();
+    }
+    pageIds = new int[pageCount];
+    pageHashes = new long[pageCount];
+    for (int i = 0; i < pageCount; i++) {
+      pageIds[i] = index.getInt();
+      pageHashes[i] = index.getLong();
+    }
+    tombstones = new int[tombstoneCount];
+    for (int i = 0; i < tombstoneCount; i++) {
+      tombstones[i] = index.getInt();
+    }
+  }
+
+  public static TaskSnapshot open(String snapshotFilepath) throws IOException {
+    return new TaskSnapshot(new File(snapshotFilepath));
+  }
+
+  public static String checksum(File dumpFile) throws IOException {
+    return Files.hash(dumpFile, Hashing.md5()).toString();
+  }
+
+  public static long hashText(String text) {
+    return Hashing.murmur3_128().hashString(text, StandardCharsets.UTF_8).asLong();
+  }
+
+  private static void write(List<? extends TaskNode> tasks, TreeMap<Integer, Long> pages,
+          TreeSet<Integer> tombstones, String dumpChecksum, long dumpSize, long dumpLastModified,
+          String snapshotFilepath) throws IOException {
+    long[] recordOffsets = new long[tasks.size()];
+    try (DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(snapshotFilepath)))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      writeString(dos, dumpChecksum);
+      dos.writeLong(dumpSize);
+      dos.writeLong(dumpLastModified);
+      dos.writeInt(tasks.size());
+      dos.writeInt(pages.size());
+      dos.writeInt(tombstones.size());
+      for (int i = 0; i < tasks.size(); i++) {
+        recordOffsets[i] = dos.size();
+        writeTask(dos, tasks.get(i));
+      }
+      long indexOffset = dos.size();
+      List<Integer> order = IntStream.range(0, tasks.size()).boxed()
+              .sorted(Comparator.comparing(i -> tasks.get(i).getId())).collect(toList());
+      for (int i : order) {
+        dos.writeLong(recordOffsets[i]);
+      }
+      for (Map.Entry<Integer, Long> page : pages.entrySet()) {
+        dos.writeInt(page.getKey());
+        dos.writeLong(page.getValue());
+      }
+      for (int tombstone : tombstones) {
+        dos.writeInt(tombstone);
+      }
+      dos.writeLong(indexOffset);
+      // the written byte counter saturates at Integer.MAX_VALUE
+      if (dos.size() == Integer.MAX_VALUE) {
+        throw new IOException("Snapshot larger than 2GB is not supported: " + snapshotFilepath);
+      }
+    }
+  }
+
+  // only pages whose text hash differs from the previous snapshot are extracted again, pages that
+  // are gone from the dump are tombstoned, and task ids stay the page ids
+  public static void build(String dumpFilepath, TaskSnapshot previous, String snapshotFilepath)
+          throws IOException {
+    File dumpFile = new File(dumpFilepath);
+    long dumpSize = dumpFile.length();
+    long dumpLastModified = dumpFile.lastModified();
+    // the dump is hashed on its own thread while the pages are extracted
+    ExecutorService hasher = Executors.newSingleThreadExecutor();
+    Future<String> dumpChecksum = hasher.submit(() -> checksum(dumpFile));
+    hasher.shutdown();
+    TaskForest tasks = new TaskForest();
+    TreeMap<Integer, Long> pages = new TreeMap<>();
+    int reused = 0;
+    try (Stream<Page> dumpPages = TaskExtractor.mapInBatches(
+            WikidumpXmlAnalyzer.parallelStreamArticles(dumpFilepath, new WikidumpPageFilter()),
+            article -> readPage(article, previous), TaskExtractor.DEFAULT_BATCH_SIZE)) {
+      Iterator<Page> iterator = dumpPages.iterator();
+      while (iterator.hasNext()) {
+        Page page = iterator.next();
+        pages.put(page.id, page.hash);
+        if (page.reused) {
+          reused++;
+        }
+        if (page.task != null) {
+          tasks.add(page.task);
+        }
+      }
+    }
+    TreeSet<Integer> tombstones = new TreeSet<>();
+    if (previous != null) {
+      Arrays.stream(previous.pageIds).filter(id -> !pages.containsKey(id))
+              .forEach(tombstones::add);
+      Arrays.stream(previous.tombstones).filter(id -> !pages.containsKey(id))
+              .forEach(tombstones::add);
+    }
+    System.out.println("Reused " + reused + " pages, extracted " + (pages.size() - reused)
+            + " pages, tombstoned " + tombstones.size() + " pages");
+    tasks.trimToSize();
+    String checksum;
+    try {
+      checksum = dumpChecksum.get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IOException("Cannot checksum " + dumpFilepath, e);
+    }
+    write(tasks.getTasks(), pages, tombstones, checksum, dumpSize, dumpLastModified,
+            snapshotFilepath);
+  }
+
+  private static class Page {
+
+    private int id;
+
+    private long hash;
+
+    private Task task;
+
+    private boolean reused;
+
+  }
+
+  private static Page readPage(WikidumpArticle article, TaskSnapshot previous) {
+    Page page = new Page();
+    page.id = article.getId();
+    page.hash = hashText(article.getText());
+    page.reused = previous != null && previous.isPageUnchanged(page.id, page.hash);
+    page.task = page.reused ? previous.getTask(String.valueOf(page.id))
+            : TaskExtractor.extractTask(article);
+    return page;
+  }
+
+  public static TaskSnapshot loadOrBuild(String dumpFilepath, String snapshotFilepath)
+          throws IOException {
+    File snapshotFile = new File(snapshotFilepath);
+    TaskSnapshot previous = null;
+    if (snapshotFile.exists()) {
+      try {
+        previous = open(snapshotFilepath);
+      } catch (IOException e) {
+        System.out.println("Unreadable snapshot " + snapshotFilepath + ": " + e.getMessage());
+      }
+    }
+    if (previous != null && previous.isUpToDate(dumpFilepath)) {
+      System.out.println("Loaded " + previous.size() + " tasks from " + snapshotFilepath);
+      return previous;
+    }
+    if (previous != null) {
+      System.out.println("Updating stale snapshot " + snapshotFilepath);
+    }
+    File tmpFile = new File(snapshotFilepath + ".tmp");
+    build(dumpFilepath, previous, tmpFile.getPath());
+    java.nio.file.Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return open(snapshotFilepath);
+  }
+
+  // an unchanged size and modification time is trusted, otherwise the checksum decides
+  public boolean isUpToDate(String dumpFilepath) throws IOException {
+    File dumpFile = new File(dumpFilepath);
+    if (dumpFile.length() == dumpSize && dumpFile.lastModified() == dumpLastModified) {
+      return true;
+    }
+    return dumpFile.length() == dumpSize && checksum(dumpFile).equals(dumpChecksum);
+  }
+
+  public boolean isPageUnchanged(int pageId, long textHash) {
+    int index = Arrays.binarySearch(pageIds, pageId);
+    return index >= 0 && pageHashes[index] == textHash;
+  }
+
+  // whether the page was in an earlier dump but is gone from this one, e.g. the task of an id in a
+  // query file written before the dump was updated
+  public boolean isDeleted(int pageId) {
+    return Arrays.binarySearch(tombstones, pageId) >= 0;
+  }
+
+  public int[] getTombstones() {
+    return tombstones.clone();
+  }
+
+  public Task getTask(String id) {
+    int index = indexOf(id);
+    return index < 0 ? null : readTask(offsets[index]);
+  }
+
+  // tasks are returned in dump order, as read-only views of a TaskForest
+  public List<TaskNode> getTasks(Collection<String> ids) {
+    List<Long> recordOffsets = new ArrayList<>();
+    for (String id : ids) {
+      int index = indexOf(id);
+      if (index >= 0) {
+        recordOffsets.add(offsets[index]);
+      }
+    }
+    return readForest(recordOffsets.stream().mapToLong(Long::longValue).distinct().sorted());
+  }
+
+  public List<TaskNode> getTasks() {
+    return readForest(Arrays.stream(offsets).sorted());
+  }
+
+  private List<TaskNode> readForest(LongStream recordOffsets) {
+    TaskForest forest = new TaskForest();
+    recordOffsets.forEachOrdered(offset -> {
+      ByteBuffer record = buffer.duplicate();
+      record.position((int) offset);
+      readTask(record, forest, -1);
+    });
+    forest.trimToSize();
+    return forest.getTasks();
+  }
+
+  public List<String> getIds() {
+    return Arrays.stream(offsets).mapToObj(this::readId).collect(toList());
+  }
+
+  private int indexOf(String id) {
+    int low = 0;
+    int high = offsets.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = readId(offsets[mid]).compareTo(id);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  public int size() {
+    return offsets.length;
+  }
+
+  private String readId(long offset) {
+    ByteBuffer record = buffer.duplicate();
+    record.position((int) offset);
+    return readString(record);
+  }
+
+  private Task readTask(long offset) {
+    ByteBuffer record = buffer.duplicate();
+    record.position((int) offset);
+    return readTask(record);
+  }
+
+  private static Task readTask(ByteBuffer record) {
+    String id = readString(record);
+    String summary = readString(record);
+    String explanation = readString(record);
+    int size = record.getInt();
+    List<Task> subtasks = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      subtasks.add(readTask(record));
+    }
+    return new Task(summary, id, explanation, subtasks);
+  }
+
+  private static void readTask(ByteBuffer record, TaskForest forest, int parent) {
+    String id = readString(record);
+    String summary = readString(record);
+    String explanation = readString(record);
+    int node = forest.addNode(parent, summary, id, explanation);
+    int size = record.getInt();
+    for (int i = 0; i < size; i++) {
+      readTask(record, forest, node);
+    }
+  }
+
+  private static void writeTask(DataOutputStream dos, TaskNode task) throws IOException {
+    writeString(dos, task.getId());
+    writeString(dos, task.getSummary());
+    writeString(dos, task.getExplanation());
+    dos.writeInt(task.getSubtasks().size());
+    for (TaskNode subtask : task.getSubtasks()) {
+      writeTask(dos, subtask);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream dos, String string) throws IOException {
+    if (string == null) {
+      dos.writeInt(-1);
+      return;
+    }
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+}
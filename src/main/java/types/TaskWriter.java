@@ -0,0 +1,192 @@
+package types;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// writes task trees straight to a writer in a single walk, one task (with its subtasks) at a time
+public class TaskWriter implements Closeable, Flushable {
+
+  public enum Format {
+    // the Task.toString layout: "# summary /id/", the explanation, then "* explanation" lines
+    // indented by two spaces per level
+    MARKDOWN,
+    // one row per task or subtask: id, parent id, depth, summary, explanation; tabs, newlines and
+    // backslashes escaped
+    TSV,
+    // one json object per task: id, summary, explanation and nested subtasks
+    JSONL
+  }
+
+  private Writer writer;
+
+  private Format format;
+
+  public TaskWriter(Writer writer, Format format) {
+    this.writer = writer;
+    this.format = format;
+  }
+
+  public TaskWriter(OutputStream os, Format format) {
+    this(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8)), format);
+  }
+
+  public void write(TaskNode task) throws IOException {
+    switch (format) {
+      case MARKDOWN:
+        writer.write("# " + task.getSummary() + " /" + task.getId() + "/\n");
+        writer.write(task.getExplanation() + "\n");
+        for (TaskNode subtask : task.getSubtasks()) {
+          writeMarkdown(subtask, 0);
+        }
+        break;
+      case TSV:
+        writeTsv(task, null, 0);
+        break;
+      case JSONL:
+        writeJson(task);
+        writer.write('\n');
+        break;
+    }
+  }
+
+  // the markdown of a single task, e.g. for toString
+  public static String toMarkdown(TaskNode task) {
+    StringWriter sw = new StringWriter();
+    try (TaskWriter writer = new TaskWriter(sw, Format.MARKDOWN)) {
+      writer.write(task);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return sw.toString();
+  }
+
+  public void writeAll(Iterable<? extends TaskNode> tasks) throws IOException {
+    for (TaskNode task : tasks) {
+      write(task);
+    }
+  }
+
+  private void writeMarkdown(TaskNode task, int depth) throws IOException {
+    for (int i = 0; i < depth; i++) {
+      writer.write("  ");
+    }
+    writer.write("* " + task.getExplanation() + "\n");
+    for (TaskNode subtask : task.getSubtasks()) {
+      writeMarkdown(subtask, depth + 1);
+    }
+  }
+
+  private void writeTsv(TaskNode task, String parentId, int depth) throws IOException {
+    String id = task.getId();
+    writeTsvRow(writer, id, parentId, String.valueOf(depth), task.getSummary(),
+            task.getExplanation());
+    for (TaskNode subtask : task.getSubtasks()) {
+      writeTsv(subtask, id, depth + 1);
+    }
+  }
+
+  // null fields are written as empty fields
+  private static void writeTsvRow(Writer writer, String... fields) throws IOException {
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        writer.write('\t');
+      }
+      if (fields[i] == null) {
+        continue;
+      }
+      for (int j = 0; j < fields[i].length(); j++) {
+        char c = fields[i].charAt(j);
+        switch (c) {
+          case '\t':
+            writer.write("\\t");
+            break;
+          case '\n':
+            writer.write("\\n");
+            break;
+          case '\r':
+            writer.write("\\r");
+            break;
+          case '\\':
+            writer.write("\\\\");
+            break;
+          default:
+            writer.write(c);
+        }
+      }
+    }
+    writer.write('\n');
+  }
+
+  private void writeJson(TaskNode task) throws IOException {
+    writer.write("{\"id\":");
+    writeJsonString(task.getId());
+    writer.write(",\"summary\":");
+    writeJsonString(task.getSummary());
+    writer.write(",\"explanation\":");
+    writeJsonString(task.getExplanation());
+    writer.write(",\"subtasks\":[");
+    boolean first = true;
+    for (TaskNode subtask : task.getSubtasks()) {
+      if (!first) {
+        writer.write(',');
+      }
+      writeJson(subtask);
+      first = false;
+    }
+    writer.write("]}");
+  }
+
+  private void writeJsonString(String string) throws IOException {
+    if (string == null) {
+      writer.write("null");
+      return;
+    }
+    writer.write('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        case '\r':
+          writer.write("\\r");
+          break;
+        case '\t':
+          writer.write("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            writer.write(String.format("\\u%04x", (int) c));
+          } else {
+            writer.write(c);
+          }
+      }
+    }
+    writer.write('"');
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+}
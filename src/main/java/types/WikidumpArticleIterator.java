@@ -0,0 +1,192 @@
+package types;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+public class WikidumpArticleIterator implements Iterator<WikidumpArticle>, AutoCloseable {
+
+  private static final String PAGE_ELEMENT = "page";
+
+  private static final String REVISION_ELEMENT = "revision";
+
+  private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+  static {
+    // a full dump easily exceeds the default accumulated entity size limit of the jdk parser
+    try {
+      factory.setProperty("http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit", 0);
+    } catch (IllegalArgumentException e) {
+      // not the jdk parser
+    }
+  }
+
+  private XMLStreamReader reader;
+
+  private WikidumpPageFilter filter;
+
+  private WikidumpArticle next;
+
+  private int count;
+
+  private int validCount;
+
+  // reused across revisions, so that only the final revision of a page is turned into a string
+  private StringBuilder revisionText = new StringBuilder();
+
+  private StringBuilder elementText = new StringBuilder();
+
+  public WikidumpArticleIterator(InputStream is, Set<String> validNamespaces)
+          throws XMLStreamException {
+    this(is, new WikidumpPageFilter(validNamespaces));
+  }
+
+  public WikidumpArticleIterator(InputStream is, WikidumpPageFilter filter)
+          throws XMLStreamException {
+    this.reader = factory.createXMLStreamReader(is);
+    this.filter = filter;
+    this.count = 0;
+    this.validCount = 0;
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      while (next == null && reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT
+                && reader.getLocalName().equals(PAGE_ELEMENT)) {
+          next = readPage();
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IllegalStateException(e);
+    }
+    return next != null;
+  }
+
+  @Override
+  public WikidumpArticle next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    WikidumpArticle article = next;
+    next = null;
+    return article;
+  }
+
+  // mirrors WikidumpArticleHandler: first title, ns and id under the page, and the text content of
+  // the last revision element; pages rejected by the filter are skipped at their first revision
+  private WikidumpArticle readPage() throws XMLStreamException {
+    count++;
+    String title = null;
+    String ns = null;
+    String id = null;
+    boolean redirect = false;
+    boolean hasRevision = false;
+    int revisionDepth = -1;
+    int depth = 0;
+    revisionText.setLength(0);
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        if (name.equals(WikidumpArticle.REDIRECT_ELEMENT)) {
+          redirect = true;
+        }
+        if (revisionDepth < 0) {
+          if (name.equals(REVISION_ELEMENT)) {
+            if (!hasRevision && !filter.accepts(title, ns, id, redirect)) {
+              skipPage(depth + 1);
+              return null;
+            }
+            revisionDepth = depth + 1;
+            hasRevision = true;
+            revisionText.setLength(0);
+          } else if (title == null && name.equals(WikidumpArticle.TITLE_ELEMENT)) {
+            title = readElementText();
+            continue;
+          } else if (ns == null && name.equals(WikidumpArticle.NAMESPACE_ELEMENT)) {
+            ns = readElementText();
+            continue;
+          } else if (id == null && name.equals(WikidumpArticle.ID_ELEMENT)) {
+            id = readElementText();
+            continue;
+          }
+        }
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        if (depth == 0) {
+          break;
+        }
+        if (depth == revisionDepth) {
+          revisionDepth = -1;
+        }
+        depth--;
+      } else if (revisionDepth >= 0 && isText(event)) {
+        revisionText.append(reader.getTextCharacters(), reader.getTextStart(),
+                reader.getTextLength());
+      }
+    }
+    if (!hasRevision || !filter.accepts(title, ns, id, redirect)) {
+      return null;
+    }
+    validCount++;
+    return new WikidumpArticle(title, Integer.parseInt(id.trim()), revisionText.toString());
+  }
+
+  private void skipPage(int openElements) throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        openElements++;
+      } else if (event == XMLStreamConstants.END_ELEMENT && openElements-- == 0) {
+        break;
+      }
+    }
+  }
+
+  // collects the text content of the current element, including nested elements
+  private String readElementText() throws XMLStreamException {
+    elementText.setLength(0);
+    int depth = 0;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        if (depth-- == 0) {
+          break;
+        }
+      } else if (isText(event)) {
+        elementText.append(reader.getTextCharacters(), reader.getTextStart(),
+                reader.getTextLength());
+      }
+    }
+    return elementText.toString();
+  }
+
+  private static boolean isText(int event) {
+    return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+            || event == XMLStreamConstants.SPACE;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getValidCount() {
+    return validCount;
+  }
+
+  @Override
+  public void close() throws XMLStreamException {
+    reader.close();
+  }
+
+}
@@ -0,0 +1,220 @@
+package types;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.xml.stream.XMLStreamException;
+
+public class WikidumpChunkedArticleIterator implements Iterator<WikidumpArticle>, AutoCloseable {
+
+  public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+  private static final byte[] PAGE_START = "<page>".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] PAGE_END = "</page>".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] CHUNK_HEAD = "<mediawiki>".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] CHUNK_TAIL = "</mediawiki>".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int SEARCH_WINDOW = 1024 * 1024;
+
+  private static class Chunk {
+
+    private List<WikidumpArticle> articles;
+
+    private int count;
+
+  }
+
+  private FileChannel channel;
+
+  // checked by the parser of each chunk, so rejected pages are skipped in parallel too
+  private WikidumpPageFilter filter;
+
+  private ForkJoinPool pool;
+
+  private List<Long> boundaries;
+
+  private int nextChunk;
+
+  private int maxChunksInFlight;
+
+  private Deque<ForkJoinTask<Chunk>> inFlight;
+
+  private Iterator<WikidumpArticle> current;
+
+  private int count;
+
+  private int validCount;
+
+  public WikidumpChunkedArticleIterator(String historyFilepath, Set<String> validNamespaces)
+          throws IOException {
+    this(historyFilepath, new WikidumpPageFilter(validNamespaces));
+  }
+
+  public WikidumpChunkedArticleIterator(String historyFilepath, WikidumpPageFilter filter)
+          throws IOException {
+    this(historyFilepath, filter, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+  }
+
+  public WikidumpChunkedArticleIterator(String historyFilepath, WikidumpPageFilter filter,
+          int chunkSize, ForkJoinPool pool) throws IOException {
+    this.channel = FileChannel.open(Paths.get(historyFilepath), StandardOpenOption.READ);
+    this.filter = filter;
+    this.pool = pool;
+    this.boundaries = findBoundaries(chunkSize);
+    this.nextChunk = 0;
+    // keep every worker busy while the consumer drains the oldest chunk, but never more
+    this.maxChunksInFlight = 2 * pool.getParallelism();
+    this.inFlight = new ArrayDeque<>();
+    this.current = Collections.emptyIterator();
+    this.count = 0;
+    this.validCount = 0;
+  }
+
+  // chunk i spans [boundaries[i], boundaries[i + 1]), every chunk but the last starting at <page>
+  private List<Long> findBoundaries(int chunkSize) throws IOException {
+    long size = channel.size();
+    List<Long> boundaries = new ArrayList<>();
+    long end = lastIndexOf(PAGE_END, size);
+    if (end < 0) {
+      return boundaries;
+    }
+    end += PAGE_END.length;
+    long start = indexOf(PAGE_START, 0, end);
+    while (start >= 0 && start < end) {
+      boundaries.add(start);
+      start = indexOf(PAGE_START, start + chunkSize, end);
+    }
+    boundaries.add(end);
+    return boundaries;
+  }
+
+  private long indexOf(byte[] pattern, long from, long to) throws IOException {
+    for (long pos = from; pos < to; pos += SEARCH_WINDOW) {
+      long length = Math.min(SEARCH_WINDOW + pattern.length - 1, to - pos);
+      MappedByteBuffer window = channel.map(MapMode.READ_ONLY, pos, length);
+      int index = indexOf(window, pattern);
+      if (index >= 0) {
+        return pos + index;
+      }
+    }
+    return -1;
+  }
+
+  private long lastIndexOf(byte[] pattern, long to) throws IOException {
+    for (long pos = to; pos > 0; pos -= SEARCH_WINDOW) {
+      long from = Math.max(0, pos - SEARCH_WINDOW);
+      long length = Math.min(pos - from + pattern.length - 1, to - from);
+      MappedByteBuffer window = channel.map(MapMode.READ_ONLY, from, length);
+      for (int i = (int) length - pattern.length; i >= 0; i--) {
+        if (matches(window, i, pattern)) {
+          return from + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+    for (int i = 0; i <= buffer.limit() - pattern.length; i++) {
+      if (matches(buffer, i, pattern)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean matches(ByteBuffer buffer, int offset, byte[] pattern) {
+    for (int j = 0; j < pattern.length; j++) {
+      if (buffer.get(offset + j) != pattern[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Chunk parseChunk(long start, long end) throws IOException, XMLStreamException {
+    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+    // a chunk is a sequence of sibling pages, so it needs a root element to be well-formed
+    InputStream is = new SequenceInputStream(Collections.enumeration(
+            Arrays.asList(new ByteArrayInputStream(CHUNK_HEAD),
+                    new ByteBufferInputStream(buffer), new ByteArrayInputStream(CHUNK_TAIL))));
+    Chunk chunk = new Chunk();
+    chunk.articles = new ArrayList<>();
+    try (WikidumpArticleIterator iterator = new WikidumpArticleIterator(is, filter)) {
+      iterator.forEachRemaining(chunk.articles::add);
+      chunk.count = iterator.getCount();
+    }
+    return chunk;
+  }
+
+  private void fillInFlight() {
+    while (inFlight.size() < maxChunksInFlight && nextChunk < boundaries.size() - 1) {
+      long start = boundaries.get(nextChunk);
+      long end = boundaries.get(nextChunk + 1);
+      inFlight.add(pool.submit(() -> parseChunk(start, end)));
+      nextChunk++;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      fillInFlight();
+      if (inFlight.isEmpty()) {
+        return false;
+      }
+      Chunk chunk = inFlight.poll().join();
+      count += chunk.count;
+      validCount += chunk.articles.size();
+      current = chunk.articles.iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public WikidumpArticle next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getValidCount() {
+    return validCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inFlight.forEach(task -> task.cancel(true));
+    inFlight.clear();
+    channel.close();
+  }
+
+}
@@ -0,0 +1,38 @@
+package types;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import types.ParallelBlockInputStream.Format;
+
+public class WikidumpFiles {
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  public static boolean isCompressed(String filepath) {
+    return filepath.endsWith(".bz2") || filepath.endsWith(".gz");
+  }
+
+  public static InputStream open(String filepath) throws IOException {
+    if (filepath.endsWith(".bz2")) {
+      if (ParallelBlockInputStream.isMultistreamBzip2(filepath)) {
+        return new ParallelBlockInputStream(filepath, Format.BZIP2);
+      }
+      return new BZip2CompressorInputStream(
+              new BufferedInputStream(new FileInputStream(filepath), BUFFER_SIZE), true);
+    }
+    if (filepath.endsWith(".gz")) {
+      if (ParallelBlockInputStream.isBgzf(filepath)) {
+        return new ParallelBlockInputStream(filepath, Format.BGZF);
+      }
+      return new GZIPInputStream(new FileInputStream(filepath), BUFFER_SIZE);
+    }
+    return new BufferedInputStream(new FileInputStream(filepath), BUFFER_SIZE);
+  }
+
+}
@@ -0,0 +1,72 @@
+package types;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+// shared by the parser threads of a chunked dump, so the id set and the title predicate must be
+// safe to read concurrently
+public class WikidumpPageFilter {
+
+  private Set<String> validNamespaces;
+
+  private Set<Integer> validIds;
+
+  private boolean redirectAccepted;
+
+  private Predicate<String> titlePredicate;
+
+  public WikidumpPageFilter() {
+    this(null);
+  }
+
+  public WikidumpPageFilter(Set<String> validNamespaces) {
+    this.validNamespaces = validNamespaces;
+    this.validIds = null;
+    this.redirectAccepted = false;
+    this.titlePredicate = null;
+  }
+
+  public WikidumpPageFilter setValidNamespaces(Set<String> validNamespaces) {
+    this.validNamespaces = validNamespaces;
+    return this;
+  }
+
+  public WikidumpPageFilter setValidIds(Set<Integer> validIds) {
+    this.validIds = validIds;
+    return this;
+  }
+
+  public WikidumpPageFilter setRedirectAccepted(boolean redirectAccepted) {
+    this.redirectAccepted = redirectAccepted;
+    return this;
+  }
+
+  public WikidumpPageFilter setTitlePredicate(Predicate<String> titlePredicate) {
+    this.titlePredicate = titlePredicate;
+    return this;
+  }
+
+  public boolean acceptsNamespace(String ns) {
+    return validNamespaces == null || validNamespaces.contains(ns);
+  }
+
+  public boolean acceptsId(String id) {
+    return validIds == null || (id != null && validIds.contains(Integer.parseInt(id.trim())));
+  }
+
+  public boolean acceptsRedirect(boolean redirect) {
+    return redirectAccepted || !redirect;
+  }
+
+  public boolean acceptsTitle(String title) {
+    return titlePredicate == null || (title != null && titlePredicate.test(title));
+  }
+
+  // page header fields (title, ns, id and redirect) precede the revisions in a dump, so a page can
+  // be rejected before any revision text is read
+  public boolean accepts(String title, String ns, String id, boolean redirect) {
+    return acceptsNamespace(ns) && acceptsRedirect(redirect) && acceptsId(id)
+            && acceptsTitle(title);
+  }
+
+}
@@ -0,0 +1,196 @@
+package types;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+// copies the pages whose id is in a given set from a dump byte for byte, together with the header
+// (everything before the first page) and the footer; pages are found by scanning for <page>,
+// <id> and </page> in the raw bytes, nothing is parsed or decoded
+public class WikidumpSubsetExtractor {
+
+  private static final byte[] PAGE_START = bytes("<page>");
+
+  private static final byte[] PAGE_END = bytes("</page>");
+
+  private static final byte[] ID_START = bytes("<id>");
+
+  private static final byte[] ID_END = bytes("</id>");
+
+  private static final byte[] REVISION_START = bytes("<revision");
+
+  private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+
+  private InputStream is;
+
+  private OutputStream os;
+
+  private Set<Integer> ids;
+
+  private byte[] buffer;
+
+  // bytes [pos, end) of the buffer are read but not consumed yet
+  private int pos;
+
+  private int end;
+
+  private boolean eof;
+
+  private int count;
+
+  private int copiedCount;
+
+  public WikidumpSubsetExtractor(InputStream is, OutputStream os, Set<Integer> ids) {
+    this.is = is;
+    this.os = os;
+    this.ids = ids;
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  public void extract() throws IOException {
+    // header, the whitespace before the first page included
+    int pageStart;
+    while ((pageStart = indexOf(PAGE_START, pos)) < 0 && !eof) {
+      // keep a possible partial match at the end
+      int keep = Math.max(pos, end - PAGE_START.length + 1);
+      os.write(buffer, pos, keep - pos);
+      pos = keep;
+      fill();
+    }
+    if (pageStart < 0) {
+      os.write(buffer, pos, end - pos);
+      return;
+    }
+    os.write(buffer, pos, pageStart - pos);
+    pos = pageStart;
+    while (true) {
+      // pos is at the whitespace before a page, or at the footer
+      while ((pageStart = indexOf(PAGE_START, pos)) < 0 && !eof) {
+        fill();
+      }
+      if (pageStart < 0) {
+        os.write(buffer, pos, end - pos);
+        return;
+      }
+      count++;
+      boolean copied = ids.contains(readPageId(pageStart - pos));
+      if (copied) {
+        copiedCount++;
+      }
+      // reading the id may have moved the buffer, the page still starts at the first <page>
+      int from = indexOf(PAGE_START, pos);
+      int pageEnd;
+      while ((pageEnd = indexOf(PAGE_END, from)) < 0 && !eof) {
+        int keep = Math.max(from, end - PAGE_END.length + 1);
+        if (copied) {
+          os.write(buffer, pos, keep - pos);
+        }
+        pos = keep;
+        fill();
+        from = pos;
+      }
+      if (pageEnd < 0) {
+        throw new IOException("Unterminated page at the end of the dump");
+      }
+      pageEnd += PAGE_END.length;
+      if (copied) {
+        os.write(buffer, pos, pageEnd - pos);
+      }
+      pos = pageEnd;
+    }
+  }
+
+  // the first <id> of the page starting offset bytes after pos, if it comes before the first
+  // revision, or -1; the buffer is filled until the page header is available, without consuming
+  // anything
+  private int readPageId(int offset) throws IOException {
+    while (true) {
+      int from = pos + offset;
+      int pageEnd = indexOf(PAGE_END, from);
+      int limit = pageEnd < 0 ? end : pageEnd;
+      int revisionStart = indexOf(REVISION_START, from, limit);
+      int idStart = indexOf(ID_START, from, limit);
+      int idEnd = idStart < 0 ? -1 : indexOf(ID_END, idStart, limit);
+      if (revisionStart >= 0 && (idStart < 0 || revisionStart < idStart)) {
+        return -1;
+      }
+      if (idEnd >= 0) {
+        return parseInt(idStart + ID_START.length, idEnd);
+      }
+      if (pageEnd >= 0 || eof) {
+        return -1;
+      }
+      fill();
+    }
+  }
+
+  private int parseInt(int from, int to) {
+    int value = 0;
+    boolean digits = false;
+    for (int i = from; i < to; i++) {
+      byte b = buffer[i];
+      if (b >= '0' && b <= '9') {
+        value = value * 10 + b - '0';
+        digits = true;
+      } else if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return -1;
+      }
+    }
+    return digits ? value : -1;
+  }
+
+  private int indexOf(byte[] pattern, int from) {
+    return indexOf(pattern, from, end);
+  }
+
+  private int indexOf(byte[] pattern, int from, int to) {
+    byte first = pattern[0];
+    for (int i = from; i <= to - pattern.length; i++) {
+      if (buffer[i] != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < pattern.length && buffer[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // moves the unconsumed bytes to the front, growing the buffer if they fill it, and reads more
+  private void fill() throws IOException {
+    if (pos > 0) {
+      System.arraycopy(buffer, pos, buffer, 0, end - pos);
+      end -= pos;
+      pos = 0;
+    }
+    if (end == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    int n = is.read(buffer, end, buffer.length - end);
+    if (n < 0) {
+      eof = true;
+    } else {
+      end += n;
+    }
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getCopiedCount() {
+    return copiedCount;
+  }
+
+}
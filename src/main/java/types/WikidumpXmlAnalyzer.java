@@ -4,13 +4,19 @@ import static java.util.stream.Collectors.toList;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -29,33 +35,43 @@ public class WikidumpXmlAnalyzer {
 
   public static class WikidumpArticleHandler implements SolnaHandler<Element> {
 
-    private Set<String> validNamespaces;
+    private WikidumpPageFilter filter;
 
     private List<WikidumpArticle> articles;
 
     private int count;
 
     public WikidumpArticleHandler(Set<String> validNamespaces) {
-      this.validNamespaces = validNamespaces;
+      this(new WikidumpPageFilter(validNamespaces));
+    }
+
+    public WikidumpArticleHandler(WikidumpPageFilter filter) {
+      this.filter = filter;
       this.articles = new ArrayList<>();
       this.count = 0;
     }
 
     public void handle(Element element) {
       count++;
-      NodeList ns = element.getElementsByTagName("ns");
-      if (validNamespaces != null && !validNamespaces.contains(ns.item(0).getTextContent())) {
+      NodeList nsElements = element.getElementsByTagName("ns");
+      String ns = nsElements.getLength() > 0 ? nsElements.item(0).getTextContent() : null;
+      NodeList redirect = element.getElementsByTagName("redirect");
+      if (!filter.acceptsNamespace(ns)
+              || !filter.acceptsRedirect(redirect != null && redirect.getLength() > 0)) {
         return;
       }
-      NodeList redirect = element.getElementsByTagName("redirect");
-      if (redirect != null && redirect.getLength() > 0) {
+      // only read for the pages left by the cheaper checks
+      String id = element.getElementsByTagName("id").item(0).getTextContent();
+      if (!filter.acceptsId(id)) {
         return;
       }
       String title = element.getElementsByTagName("title").item(0).getTextContent();
-      int id = Integer.parseInt(element.getElementsByTagName("id").item(0).getTextContent());
+      if (!filter.acceptsTitle(title)) {
+        return;
+      }
       NodeList revisionElements = element.getElementsByTagName("revision");
       String text = revisionElements.item(revisionElements.getLength() - 1).getTextContent();
-      articles.add(new WikidumpArticle(title, id, text));
+      articles.add(new WikidumpArticle(title, Integer.parseInt(id), text));
     }
 
     public List<WikidumpArticle> getArticles() {
@@ -72,18 +88,82 @@ public class WikidumpXmlAnalyzer {
 
   public WikidumpXmlAnalyzer(String historyFilepath, Set<String> validNamespaces)
           throws SolnaException, IOException {
-    WikidumpArticleHandler handler = new WikidumpArticleHandler(validNamespaces);
+    this(historyFilepath, new WikidumpPageFilter(validNamespaces));
+  }
+
+  public WikidumpXmlAnalyzer(String historyFilepath, WikidumpPageFilter filter)
+          throws SolnaException, IOException {
+    WikidumpArticleHandler handler = new WikidumpArticleHandler(filter);
     SolnaParser parser = new SolnaParser();
     parser.addHandler(PAGE_ELEMENT, handler);
     try (ByteArrayInputStream his = new ByteArrayInputStream(XML_HEAD.getBytes());
-            FileInputStream fis = new FileInputStream(historyFilepath);
+            InputStream fis = WikidumpFiles.open(historyFilepath);
             SequenceInputStream sis = new SequenceInputStream(his, fis)) {
       parser.parse(sis);
     }
     articles = handler.getArticles();
     System.out.println("Read " + handler.getCount() + " articles");
-    System.out.println(
-            "Extracted " + articles.size() + " valid articles filtered by namespace and redirect");
+    System.out.println("Extracted " + articles.size() + " valid articles filtered by page filter");
+  }
+
+  public static Stream<WikidumpArticle> streamArticles(String historyFilepath,
+          Set<String> validNamespaces) throws IOException {
+    return streamArticles(historyFilepath, new WikidumpPageFilter(validNamespaces));
+  }
+
+  public static Stream<WikidumpArticle> streamArticles(String historyFilepath,
+          WikidumpPageFilter filter) throws IOException {
+    InputStream fis = WikidumpFiles.open(historyFilepath);
+    WikidumpArticleIterator iterator;
+    try {
+      iterator = new WikidumpArticleIterator(fis, filter);
+    } catch (XMLStreamException e) {
+      fis.close();
+      throw new IOException(e);
+    }
+    return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(iterator,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+              try {
+                iterator.close();
+                fis.close();
+              } catch (XMLStreamException | IOException e) {
+                e.printStackTrace();
+              }
+              System.out.println("Read " + iterator.getCount() + " articles");
+              System.out.println("Extracted " + iterator.getValidCount()
+                      + " valid articles filtered by page filter");
+            });
+  }
+
+  public static Stream<WikidumpArticle> parallelStreamArticles(String historyFilepath,
+          Set<String> validNamespaces) throws IOException {
+    return parallelStreamArticles(historyFilepath, new WikidumpPageFilter(validNamespaces));
+  }
+
+  public static Stream<WikidumpArticle> parallelStreamArticles(String historyFilepath,
+          WikidumpPageFilter filter) throws IOException {
+    // compressed dumps cannot be split without decompressing them, but multistream dumps are
+    // already decompressed in parallel
+    if (WikidumpFiles.isCompressed(historyFilepath)) {
+      return streamArticles(historyFilepath, filter);
+    }
+    WikidumpChunkedArticleIterator iterator = new WikidumpChunkedArticleIterator(historyFilepath,
+            filter);
+    return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(iterator,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+              try {
+                iterator.close();
+              } catch (IOException e) {
+                e.printStackTrace();
+              }
+              System.out.println("Read " + iterator.getCount() + " articles");
+              System.out.println("Extracted " + iterator.getValidCount()
+                      + " valid articles filtered by page filter");
+            });
   }
 
   public void filterByIds(Set<Integer> ids) {
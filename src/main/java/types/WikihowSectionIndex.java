@@ -0,0 +1,188 @@
+package types;
+
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// offsets of the non-empty trimmed lines of an article text and of its section headers, found in a
+// single scan; lines are only materialized when they are accessed
+public class WikihowSectionIndex {
+
+  public enum Section {
+
+    INTRO(null), STEPS("steps"), TIPS("tips"), WARNINGS("warnings"),
+    THINGS_YOULL_NEED("things you'll need");
+
+    private String title;
+
+    private Section(String title) {
+      this.title = title;
+    }
+
+  }
+
+  private CharSequence text;
+
+  private int size;
+
+  private int[] lineStarts;
+
+  private int[] lineEnds;
+
+  // line numbers of the lines that are headers ("== title ==")
+  private int headerCount;
+
+  private int[] headers;
+
+  public WikihowSectionIndex(CharSequence text) {
+    this.text = text;
+    this.lineStarts = new int[16];
+    this.lineEnds = new int[16];
+    this.headers = new int[4];
+    int length = text.length();
+    int start = 0;
+    while (start <= length) {
+      int end = start;
+      while (end < length && text.charAt(end) != '\n') {
+        end++;
+      }
+      // same as String.trim
+      int trimmedStart = start;
+      int trimmedEnd = end;
+      while (trimmedStart < trimmedEnd && text.charAt(trimmedStart) <= ' ') {
+        trimmedStart++;
+      }
+      while (trimmedEnd > trimmedStart && text.charAt(trimmedEnd - 1) <= ' ') {
+        trimmedEnd--;
+      }
+      if (trimmedStart < trimmedEnd) {
+        addLine(trimmedStart, trimmedEnd);
+      }
+      start = end + 1;
+    }
+  }
+
+  private void addLine(int start, int end) {
+    if (size == lineStarts.length) {
+      lineStarts = Arrays.copyOf(lineStarts, size * 2);
+      lineEnds = Arrays.copyOf(lineEnds, size * 2);
+    }
+    lineStarts[size] = start;
+    lineEnds[size] = end;
+    if (isHeader(start, end)) {
+      if (headerCount == headers.length) {
+        headers = Arrays.copyOf(headers, headerCount * 2);
+      }
+      headers[headerCount++] = size;
+    }
+    size++;
+  }
+
+  // equivalent to matching "== *.+ *==" against the whole line
+  private boolean isHeader(int start, int end) {
+    if (end - start < 5 || !startsWith(start, "==") || !startsWith(end - 2, "==")) {
+      return false;
+    }
+    for (int i = start + 2; i < end - 2; i++) {
+      char c = text.charAt(i);
+      if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // equivalent to matching "== *title *==" against the whole header line, ignoring ascii case
+  private boolean isHeaderOf(int line, String title) {
+    int start = lineStarts[line] + 2;
+    int end = lineEnds[line] - 2;
+    while (start < end && text.charAt(start) == ' ') {
+      start++;
+    }
+    while (end > start && text.charAt(end - 1) == ' ') {
+      end--;
+    }
+    if (end - start != title.length()) {
+      return false;
+    }
+    for (int i = 0; i < title.length(); i++) {
+      char c = text.charAt(start + i);
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != title.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean startsWith(int start, String prefix) {
+    for (int i = 0; i < prefix.length(); i++) {
+      if (text.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // first line of the section content, the header itself excluded
+  public int getSectionStart(Section section) {
+    if (section == Section.INTRO) {
+      return 0;
+    }
+    for (int i = 0; i < headerCount; i++) {
+      if (isHeaderOf(headers[i], section.title)) {
+        return headers[i] + 1;
+      }
+    }
+    return size;
+  }
+
+  // the next header, or the end of the text
+  public int getSectionEnd(Section section) {
+    int start = getSectionStart(section);
+    for (int i = 0; i < headerCount; i++) {
+      if (headers[i] >= start) {
+        return headers[i];
+      }
+    }
+    return size;
+  }
+
+  public int getLineLength(int line) {
+    return lineEnds[line] - lineStarts[line];
+  }
+
+  // a view of the line, no characters are copied
+  public CharSequence getLineSequence(int line) {
+    return CharBuffer.wrap(text, lineStarts[line], lineEnds[line]);
+  }
+
+  public List<CharSequence> getLineSequences(Section section) {
+    int start = getSectionStart(section);
+    int end = Math.max(start, getSectionEnd(section));
+    return new AbstractList<CharSequence>() {
+
+      @Override
+      public CharSequence get(int index) {
+        if (index < 0 || index >= size()) {
+          throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return getLineSequence(start + index);
+      }
+
+      @Override
+      public int size() {
+        return end - start;
+      }
+
+    };
+  }
+
+}
@@ -0,0 +1,281 @@
+package types;
+
+public class WikitextNormalizer {
+
+  private static final String[] FONT_NAMES = { "b", "tt", "strong", "nowiki", "code", "em", "big",
+      "center", "sup", "sub", "i", "small", "u" };
+
+  // single left-to-right scan reproducing TaskExtractor.normalizeExplanationByPatterns; inputs
+  // where the pattern cascade could match across constructs are handed to the cascade instead
+  public static String normalize(String noisyExplanation) {
+    String normalizedExplanation = tryNormalize(noisyExplanation);
+    return normalizedExplanation != null ? normalizedExplanation
+            : TaskExtractor.normalizeExplanationByPatterns(noisyExplanation);
+  }
+
+  // the normalized explanation, or null if the input needs the pattern cascade
+  public static String tryNormalize(String noisyExplanation) {
+    String s = noisyExplanation;
+    int n = s.length();
+    // the cascade uses '.', which stops at line terminators
+    for (int j = 0; j < n; j++) {
+      if (isLineTerminator(s.charAt(j))) {
+        return null;
+      }
+    }
+    StringBuilder out = new StringBuilder(n);
+    // an internal link without a pipe may be extended by the cascade up to any later pipe
+    boolean pipelessLink = false;
+    int i = 0;
+    while (i < n) {
+      char c = s.charAt(i);
+      if (c == '<') {
+        i = scanTag(s, i, out);
+      } else if (c == '[') {
+        if (startsWith(s, i, "[[")) {
+          int end = s.indexOf("]]", i + 2);
+          if (end < 0) {
+            return null;
+          }
+          if (startsWithIgnoreCase(s, i + 2, "Image:")) {
+            if (end == i + 8 || !isClean(s, i + 8, end, true)) {
+              return null;
+            }
+          } else {
+            if (!isClean(s, i + 2, end, true)) {
+              return null;
+            }
+            String[] fields = s.substring(i + 2, end).split("\\|", -1);
+            for (String field : fields) {
+              if (field.isEmpty()) {
+                return null;
+              }
+            }
+            if (fields.length == 1) {
+              pipelessLink = true;
+              out.append(fields[0]);
+            } else if (pipelessLink || fields.length > 2 && s.indexOf("]]", end + 2) >= 0) {
+              return null;
+            } else {
+              out.append(fields[1]);
+            }
+          }
+          i = end + 2;
+        } else {
+          int space = s.indexOf(' ', i + 1);
+          int end = space < 0 ? -1 : s.indexOf(']', space + 1);
+          if (end < 0 || space == i + 1 || !isClean(s, i + 1, end, false)) {
+            return null;
+          }
+          out.append(s, space + 1, end);
+          i = end + 1;
+        }
+      } else if (c == '{') {
+        int end = s.indexOf("}}", i + 2);
+        if (!startsWith(s, i, "{{") || end < 0 || end == i + 2
+                || !isClean(s, i + 2, end, true)) {
+          return null;
+        }
+        String template = template(s.substring(i + 2, end));
+        if (template == null || pipelessLink && template.indexOf('|') >= 0) {
+          return null;
+        }
+        out.append(template);
+        i = end + 2;
+      } else if (c == ']' || c == '}' || c == '|') {
+        return null;
+      } else {
+        out.append(c);
+        i++;
+      }
+      if (i < 0) {
+        return null;
+      }
+    }
+    return trim(removeQuotes(out));
+  }
+
+  // position after the tag starting at i, or -1 if the cascade is needed
+  private static int scanTag(String s, int i, StringBuilder out) {
+    if (startsWithIgnoreCase(s, i, "<br") || startsWithIgnoreCase(s, i, "</br")) {
+      int end = s.indexOf('>', i + 3);
+      return end < 0 ? -1 : end + 1;
+    }
+    if (startsWith(s, i, "<!--")) {
+      int end = s.indexOf("-->", i + 4);
+      return end < 0 || !isClean(s, i + 4, end, false) ? -1 : end + 3;
+    }
+    int tagEnd = s.indexOf('>', i + 1);
+    if (tagEnd < 0 || tagEnd == i + 1 || !isClean(s, i + 1, tagEnd, false)) {
+      return -1;
+    }
+    // an unmatched opening tag is dropped like any other tag, unless the cascade would pair it with
+    // a closing tag further away
+    int next = s.indexOf('<', tagEnd + 1);
+    if (startsWithIgnoreCase(s, i, "<ref")) {
+      if (next >= 0 && startsWithIgnoreCase(s, next, "</ref>")) {
+        return isClean(s, tagEnd + 1, next, false) ? next + 6 : -1;
+      }
+      return indexOfIgnoreCase(s, "</ref>", tagEnd + 1) >= 0 ? -1 : tagEnd + 1;
+    }
+    if (isFontNameAt(s, i + 1)) {
+      int closeLength = next < 0 ? 0 : fontCloseLength(s, next);
+      if (closeLength > 0) {
+        if (!isClean(s, tagEnd + 1, next, false)) {
+          return -1;
+        }
+        out.append(s, tagEnd + 1, next);
+        return next + closeLength;
+      }
+      for (int j = s.indexOf("</", tagEnd + 1); j >= 0; j = s.indexOf("</", j + 2)) {
+        if (fontCloseLength(s, j) > 0) {
+          return -1;
+        }
+      }
+    }
+    return tagEnd + 1;
+  }
+
+  // the output of the first of the media, date, convert, button, two-field and other template
+  // patterns matching the template, or null if the cascade is needed
+  private static String template(String inner) {
+    String[] fields = inner.split("\\|", -1);
+    String name = fields[0].toLowerCase();
+    boolean nonEmpty = true;
+    boolean date = false;
+    for (int j = 0; j < fields.length; j++) {
+      nonEmpty &= !fields[j].isEmpty();
+      date |= j > 0 && fields[j].length() > 5 && startsWithIgnoreCase(fields[j], 0, "date=");
+    }
+    if (startsWithIgnoreCase(inner, 0, "largeimage|")
+            || startsWithIgnoreCase(inner, 0, "large image|")
+            || startsWithIgnoreCase(inner, 0, "whvid|")) {
+      // with nothing after the pipe the cascade runs on to a later }}
+      return inner.indexOf('|') < inner.length() - 1 ? "" : null;
+    }
+    if (nonEmpty && date) {
+      return "";
+    }
+    if (nonEmpty && isAscii(fields[0]) && name.equals("convert")) {
+      if (fields.length >= 3 && fields.length <= 6) {
+        return fields[1] + " " + fields[2];
+      }
+      if (fields.length >= 7) {
+        return fields[1] + " " + fields[2] + " " + fields[3];
+      }
+    }
+    if (fields.length > 1 && isAscii(fields[0])
+            && (name.equals("button") || name.equals("keypress"))) {
+      return inner.substring(fields[0].length() + 1);
+    }
+    if (nonEmpty && fields.length == 2) {
+      return fields[1];
+    }
+    return "";
+  }
+
+  private static boolean isFontNameAt(String s, int i) {
+    for (String name : FONT_NAMES) {
+      if (startsWithIgnoreCase(s, i, name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // length of the closing font tag at i, or 0
+  private static int fontCloseLength(String s, int i) {
+    if (!startsWith(s, i, "</")) {
+      return 0;
+    }
+    for (String name : FONT_NAMES) {
+      if (startsWithIgnoreCase(s, i + 2, name) && startsWith(s, i + 2 + name.length(), ">")) {
+        return name.length() + 3;
+      }
+    }
+    return 0;
+  }
+
+  // removes ''' and '' from left to right, so a run of n quotes keeps one iff n % 3 == 1
+  private static StringBuilder removeQuotes(StringBuilder sb) {
+    int w = 0;
+    int n = sb.length();
+    for (int r = 0; r < n;) {
+      if (sb.charAt(r) != '\'') {
+        sb.setCharAt(w++, sb.charAt(r++));
+        continue;
+      }
+      int run = r;
+      while (r < n && sb.charAt(r) == '\'') {
+        r++;
+      }
+      if ((r - run) % 3 == 1) {
+        sb.setCharAt(w++, '\'');
+      }
+    }
+    sb.setLength(w);
+    return sb;
+  }
+
+  private static String trim(StringBuilder sb) {
+    int start = 0;
+    int end = sb.length();
+    while (start < end && sb.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && sb.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return sb.substring(start, end);
+  }
+
+  private static boolean isClean(String s, int from, int to, boolean pipeAllowed) {
+    for (int j = from; j < to; j++) {
+      char c = s.charAt(j);
+      if (c == '<' || c == '[' || c == ']' || c == '{' || c == '}'
+              || (!pipeAllowed && c == '|')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean isAscii(String s) {
+    return s.chars().allMatch(c -> c < 128);
+  }
+
+  private static boolean startsWith(String s, int i, String prefix) {
+    return s.startsWith(prefix, i);
+  }
+
+  // patterns are compiled without UNICODE_CASE, so only ascii letters fold
+  private static boolean startsWithIgnoreCase(String s, int i, String prefix) {
+    if (i < 0 || i + prefix.length() > s.length()) {
+      return false;
+    }
+    for (int j = 0; j < prefix.length(); j++) {
+      if (toLowerAscii(s.charAt(i + j)) != toLowerAscii(prefix.charAt(j))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOfIgnoreCase(String s, String target, int from) {
+    for (int j = from; j <= s.length() - target.length(); j++) {
+      if (startsWithIgnoreCase(s, j, target)) {
+        return j;
+      }
+    }
+    return -1;
+  }
+
+  private static char toLowerAscii(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+  }
+
+}